@@ -0,0 +1,143 @@
+// Auto mode: samples the file at open time to build a density profile, then sends each query to
+// the algorithm with the lowest expected probe count for its key region.
+// The file is cut into buckets between evenly spaced sample positions. For each bucket the sample
+// at its midpoint shows how far interpolation's estimate would land from the real position:
+//   - all values equal: any probe hits, interpolation answers in one step
+//   - estimate close to the real position: the region is locally uniform, interpolation wins
+//   - otherwise: interpolation could degrade towards a linear scan, so binary search is used
+// Finding the bucket is a search over the on-heap samples, so it also narrows the range for free.
+public class AdaptiveSearch {
+
+    public static final int DEFAULT_SAMPLES = 1024;
+
+    public static final String BINARY = "Binary Search";
+    public static final String INTERPOLATION = "Interpolation Search";
+
+    // Largest midpoint estimate error, as a fraction of the bucket, still treated as uniform
+    private static final double UNIFORM_ERROR = 0.05;
+
+    private final SearchEngine engine;
+    private final long[] sampleKeys;
+    private final long[] samplePositions;
+    private final boolean[] interpolate;
+    private final long buildTimeNanos;
+
+    private AdaptiveSearch(SearchEngine engine, long[] sampleKeys, long[] samplePositions, boolean[] interpolate, long buildTimeNanos) {
+        this.engine = engine;
+        this.sampleKeys = sampleKeys;
+        this.samplePositions = samplePositions;
+        this.interpolate = interpolate;
+        this.buildTimeNanos = buildTimeNanos;
+    }
+
+    public static AdaptiveSearch build(SearchEngine engine) {
+        return build(engine, DEFAULT_SAMPLES);
+    }
+
+    // Reads two elements per bucket; the cost does not depend on the file size
+    public static AdaptiveSearch build(SearchEngine engine, int samples) {
+        long startTime = System.nanoTime();
+        long numElements = engine.getNumElements();
+        int buckets = (int) Math.max(0, Math.min(samples, numElements - 1));
+
+        long[] sampleKeys = new long[buckets + 1];
+        long[] samplePositions = new long[buckets + 1];
+        for (int i = 0; i <= buckets && numElements > 0; i++) {
+            samplePositions[i] = DataFileHeader.quantileIndex(i, buckets + 1, numElements);
+            sampleKeys[i] = engine.readElement(samplePositions[i]);
+        }
+
+        boolean[] interpolate = new boolean[buckets];
+        for (int b = 0; b < buckets; b++) {
+            long left = samplePositions[b];
+            long right = samplePositions[b + 1];
+            long leftKey = sampleKeys[b];
+            long rightKey = sampleKeys[b + 1];
+            if (leftKey == rightKey || right - left < 2) {
+                interpolate[b] = true;
+                continue;
+            }
+
+            long mid = (left + right) >>> 1;
+            double predicted = left + ((double) engine.readElement(mid) - leftKey) / ((double) rightKey - leftKey) * (right - left);
+            interpolate[b] = Math.abs(predicted - mid) / (right - left) <= UNIFORM_ERROR;
+        }
+
+        return new AdaptiveSearch(engine, sampleKeys, samplePositions, interpolate, System.nanoTime() - startTime);
+    }
+
+    // Index of the first bucket whose upper sample is >= target, or -1 if target is out of range
+    private int bucketFor(long target) {
+        int buckets = interpolate.length;
+        if (buckets == 0 || target < sampleKeys[0] || target > sampleKeys[buckets]) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = buckets - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sampleKeys[mid + 1] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Name of the algorithm that will serve this target
+    public String algorithmFor(long target) {
+        int bucket = bucketFor(target);
+        return bucket >= 0 && interpolate[bucket] ? INTERPOLATION : BINARY;
+    }
+
+    public long search(long target) {
+        return search(target, null);
+    }
+
+    public long search(long target, SearchListener listener) {
+        int bucket = bucketFor(target);
+        if (bucket < 0) {
+            // Tiny files have no buckets; everything else out of range is a miss
+            return interpolate.length == 0 ? engine.binarySearch(target, listener) : -1;
+        }
+
+        long left = samplePositions[bucket];
+        long right = samplePositions[bucket + 1];
+        if (listener != null) {
+            listener.rangeNarrowed(left, right);
+        }
+        if (interpolate[bucket]) {
+            return engine.interpolationSearchInRange(target, left, right, listener);
+        }
+        return engine.binarySearchInRange(target, left, right, listener);
+    }
+
+    public int getBucketCount() {
+        return interpolate.length;
+    }
+
+    public int getInterpolationBucketCount() {
+        int count = 0;
+        for (boolean value : interpolate) {
+            if (value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getSizeInBytes() {
+        return (long) sampleKeys.length * Long.BYTES * 2 + interpolate.length;
+    }
+
+    public long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+
+    public String describe() {
+        int interpolationBuckets = getInterpolationBucketCount();
+        return String.format("Density profile: %d buckets (%d interpolation, %d binary), built in %.4f ms",
+                interpolate.length, interpolationBuckets, interpolate.length - interpolationBuckets, buildTimeNanos / 1_000_000.0);
+    }
+}
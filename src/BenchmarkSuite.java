@@ -0,0 +1,295 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongUnaryOperator;
+
+// Benchmark matrix for tracking search performance between releases. Every combination of
+// distribution, dataset size, hit ratio, algorithm and thread count is measured JMH-style:
+// warmup iterations first, then timed iterations of fixed length, each counting completed lookups
+// on every thread. Results are printed and written as CSV and JSON.
+// Usage: java BenchmarkSuite [--distributions SKEWED,UNIFORM] [--sizes 4096,262144]
+//        [--hit-ratios 1.0,0.5,0.0] [--threads 1,4] [--warmup 2] [--iterations 5]
+//        [--iteration-ms 500] [--dir benchmark-data] [--csv results.csv] [--json results.json]
+public class BenchmarkSuite {
+
+    private static final long SEED = 42;
+    private static final int TARGETS = 1 << 16;
+
+    private String[] distributions = {"SKEWED", "UNIFORM", "ZIPF", "LOG_NORMAL", "CLUSTERED"};
+    // From L1-resident (16 KB) through L2/L3 to beyond the last-level cache (256 MB);
+    // pass larger sizes with --sizes to go past physical memory
+    private long[] sizes = {4096, 262144, 16777216, 67108864};
+    private double[] hitRatios = {1.0, 0.5, 0.0};
+    private int[] threadCounts = {1, Runtime.getRuntime().availableProcessors()};
+    private int warmupIterations = 2;
+    private int measurementIterations = 5;
+    private long iterationNanos = 500_000_000L;
+    private String dataDirectory = "benchmark-data";
+    private String csvFile = "benchmark-results.csv";
+    private String jsonFile = "benchmark-results.json";
+
+    private final List<String[]> results = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BenchmarkSuite suite = new BenchmarkSuite();
+        suite.parseArguments(args);
+        suite.run();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--distributions":
+                    distributions = value.toUpperCase(Locale.ROOT).split(",");
+                    break;
+                case "--sizes":
+                    String[] sizeValues = value.split(",");
+                    sizes = new long[sizeValues.length];
+                    for (int j = 0; j < sizeValues.length; j++) {
+                        sizes[j] = Long.parseLong(sizeValues[j]);
+                    }
+                    break;
+                case "--hit-ratios":
+                    String[] ratioValues = value.split(",");
+                    hitRatios = new double[ratioValues.length];
+                    for (int j = 0; j < ratioValues.length; j++) {
+                        hitRatios[j] = Double.parseDouble(ratioValues[j]);
+                    }
+                    break;
+                case "--threads":
+                    String[] threadValues = value.split(",");
+                    threadCounts = new int[threadValues.length];
+                    for (int j = 0; j < threadValues.length; j++) {
+                        threadCounts[j] = Integer.parseInt(threadValues[j]);
+                    }
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    measurementIterations = Integer.parseInt(value);
+                    break;
+                case "--iteration-ms":
+                    iterationNanos = Long.parseLong(value) * 1_000_000L;
+                    break;
+                case "--dir":
+                    dataDirectory = value;
+                    break;
+                case "--csv":
+                    csvFile = value;
+                    break;
+                case "--json":
+                    jsonFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        new File(dataDirectory).mkdirs();
+        System.out.printf("%-11s %10s %5s %-23s %7s %16s %12s %12s%n",
+                "Dist", "Elements", "Hit", "Algorithm", "Threads", "Lookups/s", "+/- (99.9%)", "ns/lookup");
+
+        for (String distributionName : distributions) {
+            GenerateBinaryData.Distribution distribution = GenerateBinaryData.Distribution.valueOf(distributionName);
+            for (long size : sizes) {
+                // Each dataset's mappings are released before the next one is measured, so later
+                // measurements do not run under the memory pressure of earlier datasets
+                String filename = datasetFile(distribution, size);
+                try (SearchEngine engine = openDataset(distribution, size);
+                     EytzingerIndex eytzingerIndex = EytzingerIndex.open(engine, filename);
+                     CompressedDataFile compressedFile = CompressedDataFile.open(engine, filename)) {
+                    Map<String, LongUnaryOperator> algorithms = algorithms(engine, eytzingerIndex, compressedFile);
+
+                    for (double hitRatio : hitRatios) {
+                        long[] targets = targets(engine, hitRatio);
+                        for (Map.Entry<String, LongUnaryOperator> algorithm : algorithms.entrySet()) {
+                            for (int threads : threadCounts) {
+                                measure(distributionName, size, hitRatio, algorithm.getKey(), algorithm.getValue(), threads, targets);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        writeResults();
+    }
+
+    private String datasetFile(GenerateBinaryData.Distribution distribution, long size) {
+        return new File(dataDirectory, distribution.name().toLowerCase(Locale.ROOT) + "-" + size + ".bin").getPath();
+    }
+
+    // Datasets use a fixed seed, so a file left over from an earlier run is identical and reused
+    private SearchEngine openDataset(GenerateBinaryData.Distribution distribution, long size) throws IOException {
+        String filename = datasetFile(distribution, size);
+        if (!new File(filename).exists()) {
+            GenerateBinaryData.generateDataFile(filename, size, Integer.BYTES, ByteOrder.BIG_ENDIAN, distribution, SEED);
+        }
+        return SearchEngine.open(filename);
+    }
+
+    private static Map<String, LongUnaryOperator> algorithms(SearchEngine engine, EytzingerIndex eytzingerIndex,
+                                                             CompressedDataFile compressedFile) {
+        LearnedIndex learnedIndex = LearnedIndex.build(engine);
+
+        Map<String, LongUnaryOperator> algorithms = new LinkedHashMap<>();
+        algorithms.put("Binary Search", engine::binarySearch);
+        algorithms.put("Exponential Search", engine::exponentialSearch);
+        algorithms.put("Interpolation Search", engine::interpolationSearch);
+        algorithms.put("Hybrid Search", engine::hybridSearch);
+        algorithms.put("Learned Index Search", learnedIndex::search);
+        algorithms.put("Eytzinger Search", eytzingerIndex::search);
+        algorithms.put("Compressed Block Search", compressedFile::search);
+        algorithms.put("Auto (Adaptive)", AdaptiveSearch.build(engine)::search);
+        return algorithms;
+    }
+
+    // Hits are values read from random positions; misses are random values confirmed absent
+    private static long[] targets(SearchEngine engine, double hitRatio) {
+        SplittableRandom rand = new SplittableRandom(SEED);
+        long numElements = engine.getNumElements();
+        long min = engine.getData().getHeader().getMinValue();
+        long max = engine.getData().getHeader().getMaxValue();
+        long[] targets = new long[TARGETS];
+
+        for (int i = 0; i < TARGETS; i++) {
+            if (rand.nextDouble() < hitRatio) {
+                targets[i] = engine.readElement(rand.nextLong(numElements));
+                continue;
+            }
+            long candidate = min;
+            for (int attempt = 0; attempt < 64; attempt++) {
+                candidate = min + (long) (rand.nextDouble() * ((double) max - min + 1));
+                if (engine.binarySearch(candidate) < 0) {
+                    break;
+                }
+            }
+            targets[i] = candidate;
+        }
+        return targets;
+    }
+
+    private void measure(String distribution, long size, double hitRatio, String algorithm, LongUnaryOperator search,
+                         int threads, long[] targets) throws InterruptedException {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(search, threads, targets);
+        }
+
+        double[] samples = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            samples[i] = runIteration(search, threads, targets);
+        }
+
+        double mean = 0;
+        for (double sample : samples) {
+            mean += sample;
+        }
+        mean /= samples.length;
+        double variance = 0;
+        for (double sample : samples) {
+            variance += (sample - mean) * (sample - mean);
+        }
+        double stddev = samples.length > 1 ? Math.sqrt(variance / (samples.length - 1)) : 0;
+        // Normal approximation of the 99.9% confidence interval, as JMH reports it
+        double error = 3.29 * stddev / Math.sqrt(samples.length);
+        double nanosPerLookup = mean == 0 ? 0 : threads * 1_000_000_000.0 / mean;
+
+        System.out.printf("%-11s %10d %5.2f %-23s %7d %16.0f %12.0f %12.1f%n",
+                distribution, size, hitRatio, algorithm, threads, mean, error, nanosPerLookup);
+        results.add(new String[] {distribution, Long.toString(size), Double.toString(hitRatio), algorithm,
+                Integer.toString(threads), String.format(Locale.ROOT, "%.1f", mean),
+                String.format(Locale.ROOT, "%.1f", error), String.format(Locale.ROOT, "%.2f", nanosPerLookup)});
+    }
+
+    // Runs every thread for one iteration period and returns the combined lookups/second
+    private double runIteration(LongUnaryOperator search, int threads, long[] targets) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        long[] checksums = new long[threads];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + iterationNanos;
+                int index = thread * (TARGETS / threads);
+                long count = 0;
+                long checksum = 0;
+                do {
+                    // Check the clock every 64 lookups to keep timing overhead out of the loop
+                    for (int i = 0; i < 64; i++) {
+                        checksum += search.applyAsLong(targets[index]);
+                        index = (index + 1) & (TARGETS - 1);
+                    }
+                    count += 64;
+                } while (System.nanoTime() < deadline);
+                counts[thread] = count;
+                // Keep the results live so the lookups cannot be optimised away
+                checksums[thread] = checksum;
+            });
+            workers[t].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        long total = 0;
+        long checksum = 0;
+        for (int t = 0; t < threads; t++) {
+            total += counts[t];
+            checksum += checksums[t];
+        }
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+        return total / (elapsed / 1_000_000_000.0);
+    }
+
+    private void writeResults() throws IOException {
+        String[] columns = {"distribution", "elements", "hitRatio", "algorithm", "threads", "lookupsPerSecond", "error", "nanosPerLookup"};
+
+        StringBuilder csv = new StringBuilder(String.join(",", columns)).append('\n');
+        for (String[] row : results) {
+            csv.append(String.join(",", row)).append('\n');
+        }
+        Utils.writeToFile(csv.toString(), new File(csvFile));
+
+        StringBuilder json = new StringBuilder("[\n");
+        for (int r = 0; r < results.size(); r++) {
+            String[] row = results.get(r);
+            json.append("  {");
+            for (int c = 0; c < columns.length; c++) {
+                // Text columns are quoted; numeric columns are written as JSON numbers
+                boolean text = c == 0 || c == 3;
+                json.append('"').append(columns[c]).append("\": ");
+                json.append(text ? "\"" + row[c] + "\"" : row[c]);
+                json.append(c + 1 < columns.length ? ", " : "");
+            }
+            json.append(r + 1 < results.size() ? "},\n" : "}\n");
+        }
+        json.append("]\n");
+        Utils.writeToFile(json.toString(), new File(jsonFile));
+
+        System.out.println("Results written to " + csvFile + " and " + jsonFile);
+    }
+}
@@ -0,0 +1,55 @@
+// Bloom filter over long keys: mightContain never misses a key that was added, and wrongly reports
+// an absent key about 1% of the time at the default sizing. Each key is mixed once into 64 bits
+// whose two halves give all HASHES bit positions (double hashing). The bit count is a power of
+// two, so positions are masked rather than divided.
+public class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] words;
+    private final long mask;
+
+    public BloomFilter(long expectedKeys) {
+        long bits = Long.highestOneBit(Math.max(64, expectedKeys * BITS_PER_KEY - 1)) << 1;
+        // A long[] holds at most 2^31 - 1 words; filters that large only lose some precision
+        bits = Math.min(bits, 1L << 36);
+        this.words = new long[(int) (bits >>> 6)];
+        this.mask = bits - 1;
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    // SplitMix64 finaliser, so neighbouring keys land on unrelated bits
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
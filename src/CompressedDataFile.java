@@ -0,0 +1,427 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Block-compressed copy of a sorted data file. Elements are cut into blocks of BLOCK_SIZE and each
+// block is frame-of-reference encoded: its first key goes into the block directory and every
+// element is bit-packed as its distance from that key, in as few bits as the block's range needs.
+// The dense low range of skewed data packs into a bit or two per element, and a block holding one
+// repeated value takes no space at all.
+// The directory is read onto the heap when the file is opened, so a lookup picks its block without
+// touching the file and then reads only that block. Distances can be unpacked at any position, so
+// the block is binary searched in place instead of being decoded from the start.
+// Layout (header and directory big-endian, packed words little-endian so the bit stream runs on
+// from one byte to the next):
+//   int   magic "BSCF"     short version        byte elementSize    byte flags
+//   int   block size       long  element count  long min value      long max value
+//   int   block count      long  directory offset                   (padded to 64 bytes)
+//   long[] packed words of every block
+//   long[] first keys      long[] word offsets  byte[] bit widths   (the block directory)
+// Usage: java CompressedDataFile <data file> [compressed file]
+public class CompressedDataFile implements AutoCloseable {
+
+    public static final String SIDECAR_EXTENSION = ".bpk";
+    public static final int MAGIC = 0x42534346; // "BSCF"
+    public static final short VERSION = 1;
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int HEADER_LENGTH = 64;
+    private static final int FIXED_LENGTH = 48;
+    private static final int FLAG_SIGNED = 1;
+    private static final int DIRECTORY_ENTRY_BYTES = Long.BYTES + Long.BYTES + 1;
+
+    private final SearchEngine words; // The packed words, mapped as 8-byte elements
+    private final int blockShift;
+    private final long numElements;
+    private final int elementSize;
+    private final long minValue;
+    private final long maxValue;
+    private final long[] firstKeys;
+    private final long[] wordOffsets;
+    private final byte[] widths;
+
+    private CompressedDataFile(SearchEngine words, int blockSize, long numElements, int elementSize, long minValue, long maxValue,
+                               long[] firstKeys, long[] wordOffsets, byte[] widths) {
+        this.words = words;
+        this.blockShift = Integer.numberOfTrailingZeros(blockSize);
+        this.numElements = numElements;
+        this.elementSize = elementSize;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.firstKeys = firstKeys;
+        this.wordOffsets = wordOffsets;
+        this.widths = widths;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java CompressedDataFile <data file> [compressed file]");
+            System.exit(1);
+        }
+        String output = args.length > 1 ? args[1] : sidecarName(args[0]);
+
+        long startTime = System.nanoTime();
+        try (SearchEngine sorted = SearchEngine.open(args[0])) {
+            build(sorted, output);
+        }
+        try (CompressedDataFile compressed = open(output)) {
+            System.out.printf("Compressed %s into %s in %.1f ms%n", args[0], output, (System.nanoTime() - startTime) / 1_000_000.0);
+            System.out.println(compressed.describe());
+        }
+    }
+
+    public static String sidecarName(String filename) {
+        return filename + SIDECAR_EXTENSION;
+    }
+
+    public static boolean isCompressed(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            return file.length() >= HEADER_LENGTH && file.readInt() == MAGIC;
+        }
+    }
+
+    // Maps an existing sidecar, building it first if it is missing or older than the data file.
+    // Built from an instrumented engine, the compressed file reports to the same ProbeStats.
+    public static CompressedDataFile open(SearchEngine sorted, String filename) throws IOException {
+        File dataFile = new File(filename);
+        File sidecar = new File(sidecarName(filename));
+        if (!sidecar.exists() || sidecar.lastModified() < dataFile.lastModified()) {
+            build(sorted, sidecar.getPath());
+        }
+        ProbeStats stats = sorted instanceof InstrumentedSearchEngine ? ((InstrumentedSearchEngine) sorted).getStats() : null;
+        return open(sidecar.getPath(), stats);
+    }
+
+    public static CompressedDataFile open(String filename) throws IOException {
+        return open(filename, null);
+    }
+
+    // With stats every packed word read is counted, as an InstrumentedSearchEngine counts elements
+    public static CompressedDataFile open(String filename, ProbeStats stats) throws IOException {
+        int blockSize;
+        long numElements;
+        int elementSize;
+        long minValue;
+        long maxValue;
+        long directoryOffset;
+        long[] firstKeys;
+        long[] wordOffsets;
+        byte[] widths;
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_LENGTH).order(ByteOrder.BIG_ENDIAN);
+            readFully(header, channel, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a compressed data file.");
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compressed file version " + version + ".");
+            }
+            elementSize = header.get();
+            header.get(); // flags
+            blockSize = header.getInt();
+            numElements = header.getLong();
+            minValue = header.getLong();
+            maxValue = header.getLong();
+            int blockCount = header.getInt();
+            directoryOffset = header.getLong();
+            if (Integer.bitCount(blockSize) != 1 || blockCount < 0 || numElements < 0
+                    || blockCount != (numElements + blockSize - 1) / blockSize
+                    || directoryOffset < HEADER_LENGTH || (directoryOffset - HEADER_LENGTH) % Long.BYTES != 0
+                    || directoryOffset + (long) blockCount * DIRECTORY_ENTRY_BYTES > channel.size()) {
+                throw new IOException("Corrupt compressed file header.");
+            }
+
+            firstKeys = new long[blockCount];
+            wordOffsets = new long[blockCount];
+            widths = new byte[blockCount];
+            long position = directoryOffset;
+            position = readLongs(channel, position, firstKeys);
+            position = readLongs(channel, position, wordOffsets);
+            readFully(ByteBuffer.wrap(widths), channel, position);
+        }
+
+        MappedDataFile packed = MappedDataFile.open(filename, HEADER_LENGTH, (directoryOffset - HEADER_LENGTH) / Long.BYTES,
+                Long.BYTES, ByteOrder.LITTLE_ENDIAN);
+        SearchEngine words = stats == null ? new SearchEngine(packed) : new InstrumentedSearchEngine(packed, stats);
+        return new CompressedDataFile(words, blockSize, numElements, elementSize, minValue, maxValue, firstKeys, wordOffsets, widths);
+    }
+
+    // Writes the sorted elements block by block. Only the directory is held on the heap while the
+    // packed words are streamed out; the header goes in last, once the directory offset is known.
+    public static void build(SearchEngine sorted, String compressedFile) throws IOException {
+        MappedDataFile source = sorted.getData();
+        long numElements = source.getNumElements();
+        long blockCount = (numElements + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blockCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many elements for one compressed file.");
+        }
+
+        long[] firstKeys = new long[(int) blockCount];
+        long[] wordOffsets = new long[(int) blockCount];
+        byte[] widths = new byte[(int) blockCount];
+        long[] values = new long[BLOCK_SIZE];
+        ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        long wordCount = 0;
+
+        try (RandomAccessFile file = new RandomAccessFile(compressedFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            channel.position(HEADER_LENGTH);
+
+            for (int block = 0; block < blockCount; block++) {
+                long start = (long) block * BLOCK_SIZE;
+                int length = (int) Math.min(BLOCK_SIZE, numElements - start);
+                long bits = 0;
+                for (int i = 0; i < length; i++) {
+                    values[i] = source.readElement(start + i);
+                    bits |= values[i] - values[0];
+                }
+                int width = 64 - Long.numberOfLeadingZeros(bits);
+                firstKeys[block] = values[0];
+                wordOffsets[block] = wordCount;
+                widths[block] = (byte) width;
+                if (width == 0) {
+                    continue;
+                }
+
+                // Lowest bits first; a distance that does not fit carries over into the next word
+                long word = 0;
+                int used = 0;
+                for (int i = 0; i < length; i++) {
+                    long distance = values[i] - values[0];
+                    word |= distance << used;
+                    used += width;
+                    if (used >= 64) {
+                        putLong(out, word, channel);
+                        wordCount++;
+                        used -= 64;
+                        word = used == 0 ? 0 : distance >>> (width - used);
+                    }
+                }
+                if (used > 0) {
+                    putLong(out, word, channel);
+                    wordCount++;
+                }
+            }
+            DataFileIO.flush(out, channel);
+
+            ByteBuffer directory = ByteBuffer.allocate(1 << 16).order(ByteOrder.BIG_ENDIAN);
+            for (long key : firstKeys) {
+                putLong(directory, key, channel);
+            }
+            for (long offset : wordOffsets) {
+                putLong(directory, offset, channel);
+            }
+            DataFileIO.flush(directory, channel);
+            DataFileIO.writeFully(ByteBuffer.wrap(widths), channel);
+
+            DataFileHeader sourceHeader = source.getHeader();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.put((byte) source.getElementSize());
+            header.put((byte) (source.isSigned() ? FLAG_SIGNED : 0));
+            header.putInt(BLOCK_SIZE);
+            header.putLong(numElements);
+            header.putLong(sourceHeader.getMinValue());
+            header.putLong(sourceHeader.getMaxValue());
+            header.putInt((int) blockCount);
+            header.putLong(HEADER_LENGTH + wordCount * Long.BYTES);
+            header.position(0);
+            channel.position(0);
+            DataFileIO.writeFully(header, channel);
+        } catch (IOException | RuntimeException e) {
+            // An interrupted build must not leave a truncated file that looks up to date
+            Files.deleteIfExists(Paths.get(compressedFile));
+            throw e;
+        }
+    }
+
+    private static void putLong(ByteBuffer out, long value, FileChannel channel) throws IOException {
+        if (out.remaining() < Long.BYTES) {
+            DataFileIO.flush(out, channel);
+        }
+        out.putLong(value);
+    }
+
+    private static void readFully(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated compressed file.");
+            }
+        }
+    }
+
+    // Fills values from consecutive big-endian longs and returns the position after them
+    private static long readLongs(FileChannel channel, long position, long[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.BIG_ENDIAN);
+        int index = 0;
+        while (index < values.length) {
+            buffer.clear();
+            buffer.limit(Math.min(buffer.capacity(), (values.length - index) * Long.BYTES));
+            readFully(buffer, channel, position);
+            buffer.flip();
+            int count = buffer.remaining() / Long.BYTES;
+            buffer.asLongBuffer().get(values, index, count);
+            index += count;
+            position += (long) count * Long.BYTES;
+        }
+        return position;
+    }
+
+    // Element i of a block: its first key plus the distance unpacked from one word, or two when the
+    // distance straddles a word boundary
+    private long element(int block, int i) {
+        int width = widths[block];
+        if (width == 0 || i == 0) {
+            return firstKeys[block];
+        }
+        long bit = (long) i * width;
+        long word = wordOffsets[block] + (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long distance = words.readElement(word) >>> shift;
+        if (shift + width > 64) {
+            distance |= words.readElement(word + 1) << (64 - shift);
+        }
+        return firstKeys[block] + (distance & (-1L >>> (64 - width)));
+    }
+
+    private int blockLength(int block) {
+        return (int) Math.min(1L << blockShift, numElements - ((long) block << blockShift));
+    }
+
+    public long readElement(long index) {
+        return element((int) (index >>> blockShift), (int) (index & ((1L << blockShift) - 1)));
+    }
+
+    // Last block whose first key is below target, found in the directory alone; -1 if there is none
+    private int blockBefore(long target) {
+        int lo = 0;
+        int hi = firstKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstKeys[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    // First index whose value is >= target, or numElements if there is none. Every block after the
+    // chosen one starts at or above target, so the answer lies within it or at the next block's start.
+    public long lowerBound(long target) {
+        return lowerBound(target, null);
+    }
+
+    private long lowerBound(long target, SearchListener listener) {
+        int block = blockBefore(target);
+        if (block < 0) {
+            return 0;
+        }
+        long start = (long) block << blockShift;
+        int length = blockLength(block);
+        if (listener != null) {
+            listener.rangeNarrowed(start, start + length - 1);
+        }
+
+        // Halve with a conditional move rather than a branch, as SearchEngine.scanWindow does
+        int base = 0;
+        while (length > 1) {
+            int half = length >>> 1;
+            long value = element(block, base + half - 1);
+            if (listener != null) {
+                listener.probe(start + base + half - 1, value);
+            }
+            base = value < target ? base + half : base;
+            length -= half;
+        }
+        long value = element(block, base);
+        if (listener != null) {
+            listener.probe(start + base, value);
+        }
+        return start + base + (value < target ? 1 : 0);
+    }
+
+    // First index whose value is > target, or numElements if there is none
+    public long upperBound(long target) {
+        if (target == Long.MAX_VALUE) {
+            return numElements;
+        }
+        return lowerBound(target + 1);
+    }
+
+    // Number of elements with low <= value <= high, duplicates included
+    public long count(long low, long high) {
+        if (low > high) {
+            return 0;
+        }
+        return upperBound(high) - lowerBound(low);
+    }
+
+    public long search(long target) {
+        return search(target, null);
+    }
+
+    // Returns the position of the first element equal to target, or -1
+    public long search(long target, SearchListener listener) {
+        if (numElements == 0 || target < minValue || target > maxValue) {
+            return -1;
+        }
+        long position = lowerBound(target, listener);
+        // A lower bound just past the block is the next block's first key, which is on the heap
+        if (position >= numElements || readElement(position) != target) {
+            return -1;
+        }
+        if (listener != null) {
+            listener.found(position);
+        }
+        return position;
+    }
+
+    // Reads every packed word into memory up front
+    public void load() {
+        words.getData().load();
+    }
+
+    @Override
+    public void close() {
+        words.close();
+    }
+
+    public long getNumElements() {
+        return numElements;
+    }
+
+    public int getBlockCount() {
+        return firstKeys.length;
+    }
+
+    // Bytes of packed words mapped from the file
+    public long getSizeInBytes() {
+        return words.getData().getSizeInBytes();
+    }
+
+    // Bytes of the block directory held on the heap
+    public long getIndexSizeInBytes() {
+        return (long) firstKeys.length * DIRECTORY_ENTRY_BYTES;
+    }
+
+    public String describe() {
+        long raw = numElements * elementSize;
+        long packed = getSizeInBytes();
+        return String.format("%d elements in %d blocks of %d: %d bytes packed (%.2f bits per element, %.1f%% of the raw %d bytes), "
+                        + "%d byte directory on the heap", numElements, firstKeys.length, 1 << blockShift, packed,
+                numElements == 0 ? 0 : packed * 8.0 / numElements, raw == 0 ? 0 : packed * 100.0 / raw, raw, getIndexSizeInBytes());
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Maps a data file once and serves lookups from many threads. Single lookups can be called
+// directly from any thread; batches are split into slices and resolved on the executor.
+public class ConcurrentSearchService implements AutoCloseable {
+
+    private final SearchEngine engine;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final boolean ownsExecutor;
+    private volatile SearchCache cache;
+
+    public ConcurrentSearchService(String filename, int threads) throws IOException {
+        this(SearchEngine.open(filename), Executors.newFixedThreadPool(threads), threads, true);
+    }
+
+    // Accepts any executor, e.g. one backed by virtual threads on runtimes that provide them
+    public ConcurrentSearchService(SearchEngine engine, ExecutorService executor, int parallelism) {
+        this(engine, executor, parallelism, false);
+    }
+
+    private ConcurrentSearchService(SearchEngine engine, ExecutorService executor, int parallelism, boolean ownsExecutor) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.engine = engine;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public SearchEngine getEngine() {
+        return engine;
+    }
+
+    // Optional result cache shared by all threads; pass null to disable it
+    public void setCache(SearchCache cache) {
+        this.cache = cache;
+    }
+
+    public long search(long target) {
+        SearchCache current = cache;
+        return current == null ? engine.hybridSearch(target) : current.lookup(target, engine::hybridSearch);
+    }
+
+    // Resolves the targets in parallel slices, each one using the sorted batch sweep
+    public long[] searchAll(long[] targets) throws InterruptedException {
+        long[] results = new long[targets.length];
+        int sliceSize = (targets.length + parallelism - 1) / parallelism;
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int from = 0; from < targets.length; from += sliceSize) {
+            int start = from;
+            int end = Math.min(from + sliceSize, targets.length);
+            futures.add(executor.submit(() -> {
+                long[] slice = new long[end - start];
+                System.arraycopy(targets, start, slice, 0, slice.length);
+                long[] sliceResults = engine.batchSearch(slice);
+                System.arraycopy(sliceResults, 0, results, start, sliceResults.length);
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch search failed.", e.getCause());
+        }
+        return results;
+    }
+
+    // A service that opened the file itself also releases the mapping, once no slice is still reading it
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    engine.close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
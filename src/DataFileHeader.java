@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Self-describing header at the start of a data file, written by GenerateBinaryData.
+// Layout (always big-endian, padded to a multiple of 64 bytes so the data stays aligned):
+//   int   magic "BSDF"        short version        byte elementSize     byte flags
+//   int   header length       long  element count  long min value       long max value
+//   int   quantile count      long[] quantiles (values at evenly spaced ranks, first = min, last = max)
+// Files without the magic number are treated as legacy headerless files of 4-byte signed big-endian ints.
+public class DataFileHeader {
+
+    public static final int MAGIC = 0x42534446; // "BSDF"
+    public static final short VERSION = 1;
+    public static final int DEFAULT_QUANTILES = 65;
+
+    private static final int FIXED_LENGTH = 40;
+    private static final int ALIGNMENT = 64;
+    private static final int FLAG_SIGNED = 1;
+    private static final int FLAG_LITTLE_ENDIAN = 2;
+
+    private final int elementSize;
+    private final boolean signed;
+    private final ByteOrder byteOrder;
+    private final long numElements;
+    private final long minValue;
+    private final long maxValue;
+    private final long[] quantiles;
+    private final int headerLength;
+
+    public DataFileHeader(int elementSize, boolean signed, ByteOrder byteOrder, long numElements, long minValue, long maxValue, long[] quantiles) {
+        this(elementSize, signed, byteOrder, numElements, minValue, maxValue, quantiles, alignedLength(quantiles.length));
+    }
+
+    private DataFileHeader(int elementSize, boolean signed, ByteOrder byteOrder, long numElements, long minValue, long maxValue, long[] quantiles, int headerLength) {
+        this.elementSize = elementSize;
+        this.signed = signed;
+        this.byteOrder = byteOrder;
+        this.numElements = numElements;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.quantiles = quantiles;
+        this.headerLength = headerLength;
+    }
+
+    private static int alignedLength(int quantileCount) {
+        int length = FIXED_LENGTH + quantileCount * Long.BYTES;
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    // Header for a legacy file: the data starts at offset 0 and carries no quantiles
+    public static DataFileHeader legacy(long fileSize, long minValue, long maxValue) {
+        return new DataFileHeader(4, true, ByteOrder.BIG_ENDIAN, fileSize / 4, minValue, maxValue, new long[0], 0);
+    }
+
+    // Returns null if the file does not start with a header
+    public static DataFileHeader read(FileChannel channel) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(FIXED_LENGTH).order(ByteOrder.BIG_ENDIAN);
+        if (channel.size() < FIXED_LENGTH || channel.read(fixed, 0) < FIXED_LENGTH || fixed.getInt(0) != MAGIC) {
+            return null;
+        }
+        fixed.flip();
+        fixed.getInt(); // magic
+
+        short version = fixed.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported data file version " + version + ".");
+        }
+        int elementSize = fixed.get();
+        int flags = fixed.get();
+        int headerLength = fixed.getInt();
+        long numElements = fixed.getLong();
+        long minValue = fixed.getLong();
+        long maxValue = fixed.getLong();
+        int quantileCount = fixed.getInt();
+        if (quantileCount < 0 || alignedLength(quantileCount) > headerLength) {
+            throw new IOException("Corrupt data file header.");
+        }
+
+        ByteBuffer quantileBuffer = ByteBuffer.allocate(quantileCount * Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        while (quantileBuffer.hasRemaining()) {
+            if (channel.read(quantileBuffer, FIXED_LENGTH + quantileBuffer.position()) < 0) {
+                throw new IOException("Truncated data file header.");
+            }
+        }
+        long[] quantiles = new long[quantileCount];
+        quantileBuffer.flip();
+        quantileBuffer.asLongBuffer().get(quantiles);
+
+        ByteOrder byteOrder = (flags & FLAG_LITTLE_ENDIAN) != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        return new DataFileHeader(elementSize, (flags & FLAG_SIGNED) != 0, byteOrder, numElements, minValue, maxValue, quantiles, headerLength);
+    }
+
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) elementSize);
+        buffer.put((byte) ((signed ? FLAG_SIGNED : 0) | (byteOrder == ByteOrder.LITTLE_ENDIAN ? FLAG_LITTLE_ENDIAN : 0)));
+        buffer.putInt(headerLength);
+        buffer.putLong(numElements);
+        buffer.putLong(minValue);
+        buffer.putLong(maxValue);
+        buffer.putInt(quantiles.length);
+        for (long quantile : quantiles) {
+            buffer.putLong(quantile);
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    // Index of the element reported as quantile i of count
+    public static long quantileIndex(int i, int count, long numElements) {
+        return count <= 1 ? 0 : (long) ((double) i / (count - 1) * (numElements - 1));
+    }
+
+    // Quantiles that are close to a straight line between min and max mean interpolation
+    // predicts positions well; anything else is better served by the learned index
+    public String recommendAlgorithm() {
+        if (quantiles.length < 3 || maxValue <= minValue) {
+            return "Binary Search";
+        }
+
+        double range = (double) maxValue - minValue;
+        double worstError = 0;
+        for (int i = 0; i < quantiles.length; i++) {
+            double expectedRank = (double) i / (quantiles.length - 1);
+            double linearRank = ((double) quantiles[i] - minValue) / range;
+            worstError = Math.max(worstError, Math.abs(linearRank - expectedRank));
+        }
+        return worstError < 0.05 ? "Interpolation Search" : "Learned Index Search";
+    }
+
+    public String describe() {
+        return String.format("%s%d-byte %s %s elements: %d, min = %d, max = %d, quantiles: %d",
+                headerLength == 0 ? "legacy headerless file, " : "", elementSize, signed ? "signed" : "unsigned",
+                byteOrder, numElements, minValue, maxValue, quantiles.length);
+    }
+
+    public int getElementSize() {
+        return elementSize;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    public long getNumElements() {
+        return numElements;
+    }
+
+    public long getMinValue() {
+        return minValue;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public long[] getQuantiles() {
+        return quantiles.clone();
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Write helpers shared by everything that produces data files and their sidecars
+final class DataFileIO {
+
+    private DataFileIO() {
+    }
+
+    // Appends one element of the given width; the buffer's byte order decides the layout
+    static void putElement(ByteBuffer buffer, int elementSize, long value) {
+        switch (elementSize) {
+            case 1:
+                buffer.put((byte) value);
+                break;
+            case 2:
+                buffer.putShort((short) value);
+                break;
+            case 4:
+                buffer.putInt((int) value);
+                break;
+            case 8:
+                buffer.putLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported element size.");
+        }
+    }
+
+    // Writes what has been put into out since the last clear, then clears it for reuse
+    static void flush(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        writeFully(out, channel);
+        out.clear();
+    }
+
+    static void writeFully(ByteBuffer buffer, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Positional write; leaves the channel's own position alone, so threads can share the channel
+    static void writeFully(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -1,36 +1,211 @@
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Random;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
+import java.util.stream.LongStream;
 
+// Generates sorted data files of any size without holding them on the heap. The file is split into
+// fixed-size chunks of consecutive ranks; chunk c draws its uniforms only from the quantile range
+// [c / chunks, (c + 1) / chunks), sorts that small batch and maps it through the distribution's
+// inverse CDF. Every chunk is therefore sorted and greater than the chunk before it, so chunks are
+// generated in parallel and written straight to their place in the file.
+// Usage: java GenerateBinaryData <file> <count> [distribution] [elementSize] [BIG_ENDIAN|LITTLE_ENDIAN]
 public class GenerateBinaryData {
 
+    public enum Distribution {
+        // 70% of values in [0, 1000), the rest spread thinly up to the maximum
+        SKEWED {
+            @Override
+            double inverse(double u, double max) {
+                double dense = Math.min(1000, max);
+                return u < 0.7 ? u / 0.7 * dense : dense + (u - 0.7) / 0.3 * (max - dense);
+            }
+        },
+        UNIFORM {
+            @Override
+            double inverse(double u, double max) {
+                return u * max;
+            }
+        },
+        // Continuous Zipf approximation over ranks 1..max with exponent 1.1: small values dominate
+        ZIPF {
+            @Override
+            double inverse(double u, double max) {
+                double exponent = 1 - 1.1;
+                return Math.pow(u * (Math.pow(max, exponent) - 1) + 1, 1 / exponent) - 1;
+            }
+        },
+        // Median at the square root of the maximum, with a long right tail
+        LOG_NORMAL {
+            @Override
+            double inverse(double u, double max) {
+                return Math.exp(Math.log(max) / 2 + 2 * inverseNormal(u));
+            }
+        },
+        // 16 narrow, evenly spaced clusters separated by empty gaps
+        CLUSTERED {
+            @Override
+            double inverse(double u, double max) {
+                int clusters = 16;
+                double width = max * 0.002;
+                double scaled = u * clusters;
+                int cluster = (int) Math.min(scaled, clusters - 1);
+                double center = (cluster + 0.5) / clusters * max;
+                return center - width / 2 + (scaled - cluster) * width;
+            }
+        };
+
+        // Maps u in [0, 1) to a value; must be non-decreasing in u
+        abstract double inverse(double u, double max);
+    }
+
+    private static final int CHUNK_ELEMENTS = 1 << 16;
+
+    // Coefficients of inverseNormal, shared by every call on the generation path
+    private static final double[] NORMAL_A = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02, 1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    private static final double[] NORMAL_B = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02, 6.680131188771972e+01, -1.328068155288572e+01};
+    private static final double[] NORMAL_C = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00, -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    private static final double[] NORMAL_D = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+    private static final double NORMAL_LOW = 0.02425;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java GenerateBinaryData <file> <count> [distribution] [elementSize] [BIG_ENDIAN|LITTLE_ENDIAN]");
+            System.exit(1);
+        }
+        long numElements = Long.parseLong(args[1]);
+        Distribution distribution = args.length > 2 ? Distribution.valueOf(args[2].toUpperCase()) : Distribution.SKEWED;
+        int elementSize = args.length > 3 ? Integer.parseInt(args[3]) : Integer.BYTES;
+        ByteOrder byteOrder = args.length > 4 && args[4].equalsIgnoreCase("LITTLE_ENDIAN") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+        long startTime = System.nanoTime();
+        generateDataFile(args[0], numElements, elementSize, byteOrder, distribution, System.nanoTime());
+        System.out.printf("Generated %d %s elements in %.1f s%n", numElements, distribution, (System.nanoTime() - startTime) / 1_000_000_000.0);
+    }
+
     public static void generateDataFile(String filename, int numElements, ByteOrder byteOrder) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(filename)) {
-            ByteBuffer buffer = ByteBuffer.allocate(4);
-            buffer.order(byteOrder);
-
-            Random rand = new Random();
-            int[] data = new int[numElements];
-
-            // Generate unbalanced/non-uniform data
-            for (int i = 0; i < numElements; i++) {
-                if (i < numElements * 0.7) {
-                    data[i] = rand.nextInt(1000); // Majority of data in lower range
-                } else {
-                    data[i] = rand.nextInt(Integer.MAX_VALUE - 1000) + 1000; // Sparse higher range
-                }
+        generateDataFile(filename, numElements, Integer.BYTES, byteOrder, Distribution.SKEWED, System.nanoTime());
+    }
+
+    public static void generateDataFile(String filename, long numElements, int elementSize, ByteOrder byteOrder,
+                                        Distribution distribution, long seed) throws IOException {
+        generateDataFile(filename, numElements, elementSize, byteOrder, distribution, seed, null);
+    }
+
+    // The progress callback receives the fraction of elements written after each chunk. It is called
+    // from the worker threads and may throw an unchecked exception to abandon the file.
+    public static void generateDataFile(String filename, long numElements, int elementSize, ByteOrder byteOrder,
+                                        Distribution distribution, long seed, DoubleConsumer progress) throws IOException {
+        if (elementSize != 1 && elementSize != 2 && elementSize != 4 && elementSize != 8) {
+            throw new IllegalArgumentException("Unsupported element size.");
+        }
+
+        // Largest signed value of the element width
+        double maxValue = Math.pow(2, elementSize * 8 - 1) - 1;
+        long chunks = (numElements + CHUNK_ELEMENTS - 1) / CHUNK_ELEMENTS;
+        int quantileCount = numElements == 0 ? 0 : DataFileHeader.DEFAULT_QUANTILES;
+        long[] quantiles = new long[quantileCount];
+        long[] bounds = new long[2];
+        AtomicLong written = new AtomicLong();
+
+        // Reserve room for the header; it is written last, once min, max and quantiles are known
+        int headerLength = new DataFileHeader(elementSize, true, byteOrder, numElements, 0, 0, quantiles).getHeaderLength();
+
+        // Each worker thread reuses one chunk of uniforms and one output buffer
+        ThreadLocal<double[]> uniforms = ThreadLocal.withInitial(() -> new double[CHUNK_ELEMENTS]);
+        ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_ELEMENTS * elementSize).order(byteOrder));
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            try {
+                LongStream.range(0, chunks).parallel().forEach(chunk -> {
+                    long firstRank = chunk * CHUNK_ELEMENTS;
+                    int count = (int) Math.min(CHUNK_ELEMENTS, numElements - firstRank);
+                    double low = (double) firstRank / numElements;
+                    double high = (double) (firstRank + count) / numElements;
+
+                    double[] values = uniforms.get();
+                    SplittableRandom rand = new SplittableRandom(seed + chunk * 0x9E3779B97F4A7C15L);
+                    for (int i = 0; i < count; i++) {
+                        values[i] = low + rand.nextDouble() * (high - low);
+                    }
+                    Arrays.sort(values, 0, count);
+
+                    ByteBuffer buffer = buffers.get();
+                    buffer.clear();
+                    for (int i = 0; i < count; i++) {
+                        DataFileIO.putElement(buffer, elementSize, toValue(distribution, values[i], maxValue));
+                    }
+                    recordStatistics(distribution, values, firstRank, count, numElements, maxValue, quantiles, bounds);
+
+                    buffer.flip();
+                    try {
+                        DataFileIO.writeFully(buffer, channel, headerLength + firstRank * elementSize);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (progress != null) {
+                        progress.accept((double) written.addAndGet(count) / numElements);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
 
-            // Sort the data
-            java.util.Arrays.sort(data);
+            DataFileHeader header = new DataFileHeader(elementSize, true, byteOrder, numElements, bounds[0], bounds[1], quantiles);
+            DataFileIO.writeFully(header.toByteBuffer(), channel, 0);
+        }
+    }
+
+    private static long toValue(Distribution distribution, double u, double maxValue) {
+        return (long) Math.max(0, Math.min(maxValue, distribution.inverse(u, maxValue)));
+    }
 
-            // Write data to file
-            for (int value : data) {
-                buffer.putInt(0, value);
-                fos.write(buffer.array());
+    // Fills in the header statistics whose ranks fall inside this chunk. Ranks are disjoint
+    // between chunks, so each slot is written by exactly one thread.
+    private static void recordStatistics(Distribution distribution, double[] values, long firstRank, int count,
+                                         long numElements, double maxValue, long[] quantiles, long[] bounds) {
+        long lastRank = firstRank + count - 1;
+        if (firstRank == 0) {
+            bounds[0] = toValue(distribution, values[0], maxValue);
+        }
+        if (lastRank == numElements - 1) {
+            bounds[1] = toValue(distribution, values[count - 1], maxValue);
+        }
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = DataFileHeader.quantileIndex(q, quantiles.length, numElements);
+            if (rank >= firstRank && rank <= lastRank) {
+                quantiles[q] = toValue(distribution, values[(int) (rank - firstRank)], maxValue);
             }
         }
     }
+
+    // Inverse of the standard normal CDF (Acklam's rational approximation, relative error < 1.2e-9)
+    static double inverseNormal(double p) {
+        if (p <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (p >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        if (p < NORMAL_LOW) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((NORMAL_C[0] * q + NORMAL_C[1]) * q + NORMAL_C[2]) * q + NORMAL_C[3]) * q + NORMAL_C[4]) * q + NORMAL_C[5]) / ((((NORMAL_D[0] * q + NORMAL_D[1]) * q + NORMAL_D[2]) * q + NORMAL_D[3]) * q + 1);
+        }
+        if (p > 1 - NORMAL_LOW) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((NORMAL_C[0] * q + NORMAL_C[1]) * q + NORMAL_C[2]) * q + NORMAL_C[3]) * q + NORMAL_C[4]) * q + NORMAL_C[5]) / ((((NORMAL_D[0] * q + NORMAL_D[1]) * q + NORMAL_D[2]) * q + NORMAL_D[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((NORMAL_A[0] * r + NORMAL_A[1]) * r + NORMAL_A[2]) * r + NORMAL_A[3]) * r + NORMAL_A[4]) * r + NORMAL_A[5]) * q / (((((NORMAL_B[0] * r + NORMAL_B[1]) * r + NORMAL_B[2]) * r + NORMAL_B[3]) * r + NORMAL_B[4]) * r + 1);
+    }
 }
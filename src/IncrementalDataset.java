@@ -0,0 +1,673 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// A sorted data file that takes inserts without being rewritten, in the style of an LSM tree.
+// New values go into a sorted in-memory buffer (the memtable). When it fills up it is written next
+// to the data file as an immutable sorted run. Compaction is size-tiered and runs in the background:
+// runs fall into tiers by size (a factor of runsPerTier apart), and once runsPerTier runs of one
+// tier have piled up they are merged into a run of the next tier, streaming through them in a single
+// pass. Large runs are therefore rewritten only when enough newer runs have caught up with them:
+// each value is rewritten about log(n) / log(runsPerTier) times, and the run count grows the same way.
+// A lookup checks the memtable, the runs newest first, then the data file itself. A run whose
+// min/max range excludes the target is skipped without reading it, and every run keeps a Bloom
+// filter on the heap, so runs that do not hold the target rarely cost a single file access.
+// Runs are named <data file>.run-<first>-<last> after the flushes they hold. A merged run covers
+// the range of its inputs, so inputs an interrupted compaction failed to delete are recognised and
+// removed the next time the dataset is opened. Values still in the memtable are only in memory
+// until flush() or close() writes them out.
+public class IncrementalDataset implements AutoCloseable {
+
+    public static final int DEFAULT_MEMTABLE_CAPACITY = 1 << 14;
+    public static final int DEFAULT_RUNS_PER_TIER = 4;
+
+    private static final String RUN_INFIX = ".run-";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long[] EMPTY = new long[0];
+
+    private final SearchEngine base;
+    private final File dataFile;
+    private final int memtableCapacity;
+    private final int runsPerTier;
+    private final ProbeStats stats; // Set when the base engine is instrumented, so the runs are counted too
+    private final ExecutorService compactor;
+    private final Object flushLock = new Object();
+    private final Object compactionLock = new Object();
+
+    // Lookups hold the read lock; inserts, flushes and compactions change the state below under the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] memtable;
+    private int memtableSize;
+    private long[] flushing = EMPTY; // Values being written as a run, searched until the run is in place
+    private final List<Run> runs; // Oldest first
+    private long nextSequence;
+    private long compactions;
+    private boolean compactionScheduled;
+    private boolean closed;
+    private volatile boolean closing; // Makes a running compaction give up, so close() need not wait for it
+
+    private static final class Run {
+        final SearchEngine engine;
+        final File file;
+        final long firstSequence;
+        final long lastSequence;
+        final long minValue;
+        final long maxValue;
+        final BloomFilter filter;
+
+        Run(SearchEngine engine, File file, long firstSequence, long lastSequence, BloomFilter filter) {
+            this.engine = engine;
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.minValue = engine.getData().getHeader().getMinValue();
+            this.maxValue = engine.getData().getHeader().getMaxValue();
+            this.filter = filter;
+        }
+
+        long size() {
+            return engine.getNumElements();
+        }
+    }
+
+    // The base engine stays owned by the caller; the runs found next to it are opened here
+    public static IncrementalDataset open(SearchEngine base, String filename) throws IOException {
+        return new IncrementalDataset(base, filename, DEFAULT_MEMTABLE_CAPACITY, DEFAULT_RUNS_PER_TIER);
+    }
+
+    public IncrementalDataset(SearchEngine base, String filename, int memtableCapacity, int runsPerTier) throws IOException {
+        if (memtableCapacity <= 0 || runsPerTier < 2) {
+            throw new IllegalArgumentException("Memtable capacity must be positive and at least two runs must make a tier.");
+        }
+        this.base = base;
+        this.dataFile = new File(filename).getAbsoluteFile();
+        this.memtableCapacity = memtableCapacity;
+        this.runsPerTier = runsPerTier;
+        this.stats = base instanceof InstrumentedSearchEngine ? ((InstrumentedSearchEngine) base).getStats() : null;
+        this.memtable = new long[memtableCapacity];
+        this.compactor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Run compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.runs = loadRuns();
+        scheduleCompaction();
+    }
+
+    // Opens the runs left by earlier sessions. Temporary files of an interrupted write are deleted,
+    // and so are runs covered by a merged run and runs older than the data file, which belong to
+    // an earlier version of it.
+    private List<Run> loadRuns() throws IOException {
+        String prefix = dataFile.getName() + RUN_INFIX;
+        File[] files = dataFile.getParentFile().listFiles((directory, name) -> name.startsWith(prefix));
+        List<File> candidates = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        for (File file : files == null ? new File[0] : files) {
+            long[] range = parseRange(file.getName().substring(prefix.length()));
+            if (file.getName().endsWith(TEMP_SUFFIX) || (range != null && file.lastModified() < dataFile.lastModified())) {
+                Files.deleteIfExists(file.toPath());
+            } else if (range != null) {
+                candidates.add(file);
+                ranges.add(range);
+            }
+        }
+
+        List<Run> loaded = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            long[] range = ranges.get(i);
+            boolean covered = false;
+            for (long[] other : ranges) {
+                covered |= other != range && other[0] <= range[0] && range[1] <= other[1];
+            }
+            if (covered) {
+                Files.deleteIfExists(candidates.get(i).toPath());
+                continue;
+            }
+            loaded.add(openRun(candidates.get(i), range[0], range[1], null));
+            nextSequence = Math.max(nextSequence, range[1] + 1);
+        }
+        loaded.sort((a, b) -> Long.compare(a.firstSequence, b.firstSequence));
+        return loaded;
+    }
+
+    // "<first>-<last>" as two sequence numbers, or null for any other name
+    private static long[] parseRange(String suffix) {
+        int dash = suffix.indexOf('-');
+        try {
+            return dash < 0 ? null : new long[] {Long.parseLong(suffix.substring(0, dash)), Long.parseLong(suffix.substring(dash + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private File runFile(long firstSequence, long lastSequence) {
+        return new File(dataFile.getParentFile(), dataFile.getName() + RUN_INFIX + firstSequence + "-" + lastSequence);
+    }
+
+    // A run reopened from disk gets its filter rebuilt in one sequential pass; new runs bring theirs along
+    private Run openRun(File file, long firstSequence, long lastSequence, BloomFilter filter) throws IOException {
+        SearchEngine engine = stats == null ? SearchEngine.open(file.getPath()) : InstrumentedSearchEngine.open(file.getPath(), stats);
+        if (filter == null) {
+            filter = new BloomFilter(engine.getNumElements());
+            MappedDataFile data = engine.getData();
+            for (long i = 0; i < data.getNumElements(); i++) {
+                filter.add(data.readElement(i));
+            }
+        }
+        return new Run(engine, file, firstSequence, lastSequence, filter);
+    }
+
+    public void insert(long value) throws IOException {
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            int position = lowerBound(memtable, memtableSize, value);
+            if (memtableSize == memtable.length) {
+                memtable = Arrays.copyOf(memtable, memtable.length * 2);
+            }
+            System.arraycopy(memtable, position, memtable, position + 1, memtableSize - position);
+            memtable[position] = value;
+            memtableSize++;
+            full = memtableSize >= memtableCapacity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (full) {
+            flush(true);
+        }
+    }
+
+    // Sorts the values once and merges them into the memtable in a single pass
+    public void insert(long[] values) throws IOException {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            mergeIntoMemtable(sorted);
+            full = memtableSize >= memtableCapacity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (full) {
+            flush(true);
+        }
+    }
+
+    // Merges from the back, so the memtable is only copied when it has to grow. Caller holds the write lock.
+    private void mergeIntoMemtable(long[] sorted) {
+        int total = memtableSize + sorted.length;
+        if (total > memtable.length) {
+            memtable = Arrays.copyOf(memtable, Math.max(total, memtable.length * 2));
+        }
+        int i = memtableSize - 1;
+        int j = sorted.length - 1;
+        for (int k = total - 1; j >= 0; k--) {
+            memtable[k] = i >= 0 && memtable[i] > sorted[j] ? memtable[i--] : sorted[j--];
+        }
+        memtableSize = total;
+    }
+
+    // Writes the memtable out as a new run. Its values stay visible to lookups throughout.
+    public void flush() throws IOException {
+        flush(false);
+    }
+
+    // Inserts pass onlyIfFull, so a second thread that found the memtable full does not write a tiny run after the first
+    private void flush(boolean onlyIfFull) throws IOException {
+        synchronized (flushLock) {
+            long[] values;
+            long sequence;
+            lock.writeLock().lock();
+            try {
+                if (closed || memtableSize == 0 || (onlyIfFull && memtableSize < memtableCapacity)) {
+                    return;
+                }
+                values = Arrays.copyOf(memtable, memtableSize);
+                flushing = values;
+                memtableSize = 0;
+                if (memtable.length > memtableCapacity) {
+                    memtable = new long[memtableCapacity];
+                }
+                sequence = nextSequence++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Run run;
+            try {
+                run = writeRun(sequence, sequence, values.length, Arrays.stream(values).iterator());
+            } catch (IOException | RuntimeException e) {
+                // Keep the values in memory so a later flush can try again
+                lock.writeLock().lock();
+                try {
+                    mergeIntoMemtable(values);
+                    flushing = EMPTY;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                runs.add(run);
+                flushing = EMPTY;
+                scheduleCompaction();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Streams count sorted values into a run file behind a data file header. The file is written
+    // under a temporary name and renamed when complete, so a crash never leaves a partial run.
+    private Run writeRun(long firstSequence, long lastSequence, long count, PrimitiveIterator.OfLong values) throws IOException {
+        File file = runFile(firstSequence, lastSequence);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        BloomFilter filter = new BloomFilter(count);
+        long minValue = 0;
+        long maxValue = 0;
+
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            int headerLength = new DataFileHeader(Long.BYTES, true, ByteOrder.BIG_ENDIAN, count, 0, 0, new long[0]).getHeaderLength();
+            channel.position(headerLength);
+
+            ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.BIG_ENDIAN);
+            for (long i = 0; i < count; i++) {
+                long value = values.nextLong();
+                if (i == 0) {
+                    minValue = value;
+                }
+                maxValue = value;
+                filter.add(value);
+                if (!out.hasRemaining()) {
+                    DataFileIO.flush(out, channel);
+                }
+                out.putLong(value);
+            }
+            DataFileIO.flush(out, channel);
+
+            // The header goes in last, once min and max are known
+            DataFileHeader header = new DataFileHeader(Long.BYTES, true, ByteOrder.BIG_ENDIAN, count, minValue, maxValue, new long[0]);
+            DataFileIO.writeFully(header.toByteBuffer(), channel, 0);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return openRun(file, firstSequence, lastSequence, filter);
+    }
+
+    // Caller holds the write lock
+    private void scheduleCompaction() {
+        if (!compactionScheduled && !closing && !selectTier().isEmpty()) {
+            compactionScheduled = true;
+            compactor.execute(() -> {
+                boolean merged = false;
+                try {
+                    compact(false);
+                    merged = true;
+                } catch (IOException e) {
+                    // The runs stay as they are and are merged on a later attempt
+                    e.printStackTrace();
+                } finally {
+                    lock.writeLock().lock();
+                    try {
+                        compactionScheduled = false;
+                        // Runs flushed during the merge may call for another one; a failed merge
+                        // waits for the next flush instead of retrying at once
+                        if (merged) {
+                            scheduleCompaction();
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            });
+        }
+    }
+
+    // Merges every current run into one
+    public void compact() throws IOException {
+        compact(true);
+    }
+
+    // Merges all runs, or in the background only those selectTier picks. Lookups
+    // and inserts carry on while the merged run is written; the runs are only swapped, under the
+    // write lock, once it is complete. Runs flushed in the meantime are newer and stay after it.
+    private void compact(boolean all) throws IOException {
+        synchronized (compactionLock) {
+            List<Run> inputs;
+            lock.readLock().lock();
+            try {
+                if (closed && !all) {
+                    return;
+                }
+                checkOpen();
+                inputs = all ? new ArrayList<>(runs) : selectTier();
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (inputs.size() < 2) {
+                return;
+            }
+
+            long count = 0;
+            for (Run input : inputs) {
+                count += input.size();
+            }
+            Run merged;
+            try {
+                merged = writeRun(inputs.get(0).firstSequence, inputs.get(inputs.size() - 1).lastSequence, count, new MergeIterator(inputs));
+            } catch (CancellationException e) {
+                return; // Closing; the inputs stay and are merged when the dataset is next opened
+            }
+
+            lock.writeLock().lock();
+            try {
+                // Only compaction removes runs and flushes only append, so the inputs are still next to each other
+                int first = runs.indexOf(inputs.get(0));
+                runs.subList(first, first + inputs.size()).clear();
+                runs.add(first, merged);
+                compactions++;
+                // No lookup can be reading the inputs while the write lock is held
+                for (Run input : inputs) {
+                    input.engine.close();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Run input : inputs) {
+                Files.deleteIfExists(input.file.toPath());
+            }
+        }
+    }
+
+    // The runs the next background compaction merges, or none. A run larger than the one before it
+    // is merged into that one first, keeping the tiers in order from oldest to newest; otherwise
+    // the oldest runsPerTier runs of the newest full tier are merged. The run before a tier is in a
+    // higher tier, so the merged run never ends up larger than it. Inputs are always adjacent runs,
+    // so the merged run's sequence range covers exactly them. Caller holds the lock.
+    private List<Run> selectTier() {
+        for (int i = runs.size() - 2; i >= 0; i--) {
+            if (tier(runs.get(i)) < tier(runs.get(i + 1))) {
+                return new ArrayList<>(runs.subList(i, i + 2));
+            }
+        }
+        int end = runs.size();
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && tier(runs.get(start - 1)) == tier(runs.get(end - 1))) {
+                start--;
+            }
+            if (end - start >= runsPerTier) {
+                return new ArrayList<>(runs.subList(start, start + runsPerTier));
+            }
+            end = start;
+        }
+        return new ArrayList<>();
+    }
+
+    // floor(log(size) / log(runsPerTier)): runs within a factor of runsPerTier share a tier
+    private int tier(Run run) {
+        int tier = 0;
+        for (long size = run.size(); size >= runsPerTier; size /= runsPerTier) {
+            tier++;
+        }
+        return tier;
+    }
+
+    // Streams the union of sorted runs in order. There are only a handful of runs, so the smallest
+    // head is found with a linear scan. Stops with a CancellationException once close() has begun.
+    private class MergeIterator implements PrimitiveIterator.OfLong {
+
+        private final MappedDataFile[] sources;
+        private final long[] positions;
+        private final long[] heads;
+
+        MergeIterator(List<Run> runs) {
+            sources = new MappedDataFile[runs.size()];
+            positions = new long[runs.size()];
+            heads = new long[runs.size()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = runs.get(i).engine.getData();
+                if (sources[i].getNumElements() > 0) {
+                    heads[i] = sources[i].readElement(0);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (int i = 0; i < sources.length; i++) {
+                if (positions[i] < sources[i].getNumElements()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long nextLong() {
+            int best = -1;
+            for (int i = 0; i < sources.length; i++) {
+                if (positions[i] < sources[i].getNumElements() && (best < 0 || heads[i] < heads[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                throw new NoSuchElementException();
+            }
+            if (closing) {
+                throw new CancellationException();
+            }
+            long value = heads[best];
+            if (++positions[best] < sources[best].getNumElements()) {
+                heads[best] = sources[best].readElement(positions[best]);
+            }
+            return value;
+        }
+    }
+
+    public boolean contains(long target) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            if (Arrays.binarySearch(memtable, 0, memtableSize, target) >= 0 || Arrays.binarySearch(flushing, target) >= 0) {
+                return true;
+            }
+            for (int i = runs.size() - 1; i >= 0; i--) {
+                Run run = runs.get(i);
+                if (target >= run.minValue && target <= run.maxValue && run.filter.mightContain(target)
+                        && run.engine.binarySearch(target) >= 0) {
+                    return true;
+                }
+            }
+            return base.binarySearch(target) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Position of the first occurrence of target in the sorted union of all values, or -1. Absent
+    // targets are turned away by contains(), where the filters keep them cheap; only a hit pays for
+    // a lower bound in every run.
+    public long search(long target) {
+        lock.readLock().lock();
+        try {
+            if (!contains(target)) {
+                return -1;
+            }
+            long position = lowerBound(memtable, memtableSize, target) + lowerBound(flushing, flushing.length, target)
+                    + base.lowerBound(target);
+            for (Run run : runs) {
+                position += target > run.maxValue ? run.size() : target <= run.minValue ? 0 : run.engine.lowerBound(target);
+            }
+            return position;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Number of values with low <= value <= high across the data file, the runs and the memtable
+    public long count(long low, long high) {
+        if (low > high) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            long count = countInRange(memtable, memtableSize, low, high) + countInRange(flushing, flushing.length, low, high)
+                    + base.count(low, high);
+            for (Run run : runs) {
+                if (high < run.minValue || low > run.maxValue || (low == high && !run.filter.mightContain(low))) {
+                    continue;
+                }
+                count += run.engine.count(low, high);
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // First index in values[0, size) whose value is >= target
+    private static int lowerBound(long[] values, int size, long target) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long countInRange(long[] values, int size, long low, long high) {
+        int upper = high == Long.MAX_VALUE ? size : lowerBound(values, size, high + 1);
+        return upper - lowerBound(values, size, low);
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            long size = base.getNumElements() + memtableSize + flushing.length;
+            for (Run run : runs) {
+                size += run.size();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Values added since the data file was written, whether still in memory or already in runs
+    public long getInsertedCount() {
+        return size() - base.getNumElements();
+    }
+
+    public int getRunCount() {
+        lock.readLock().lock();
+        try {
+            return runs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bytes of the runs' mappings
+    public long getSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            for (Run run : runs) {
+                size += run.engine.getData().getSizeInBytes();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bytes held on the heap: the memtable and the Bloom filters
+    public long getIndexSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long size = (long) (memtable.length + flushing.length) * Long.BYTES;
+            for (Run run : runs) {
+                size += run.filter.getSizeInBytes();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String describe() {
+        lock.readLock().lock();
+        try {
+            long runElements = 0;
+            for (Run run : runs) {
+                runElements += run.size();
+            }
+            return String.format("Incremental dataset: %d elements in the data file, %d in %d runs, %d in memory, %d compactions",
+                    base.getNumElements(), runElements, runs.size(), memtableSize + flushing.length, compactions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The dataset is closed.");
+        }
+    }
+
+    // Writes out the memtable, stops a running compaction and unmaps the runs. The runs are only
+    // unmapped under compactionLock, so no merge can still be reading them, however close() itself
+    // is interrupted. The base engine belongs to the caller and stays open.
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closing = true;
+            compactor.shutdown();
+            synchronized (compactionLock) {
+                lock.writeLock().lock();
+                try {
+                    closed = true;
+                    for (Run run : runs) {
+                        run.engine.close();
+                    }
+                    runs.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// SearchEngine that reports every element it reads to a ProbeStats, so a query can be measured in
+// reads and pages touched, not only in time. Indexes built on it (LearnedIndex, AdaptiveSearch) read
+// through it and are measured as well. Counting costs a few nanoseconds per read, so the plain
+// SearchEngine stays the choice when only throughput matters.
+public class InstrumentedSearchEngine extends SearchEngine {
+
+    private static final AtomicInteger NEXT_FILE_ID = new AtomicInteger();
+
+    private final ProbeStats stats;
+    private final int fileId;
+    private final long dataOffset;
+    private final int elementSize;
+
+    public InstrumentedSearchEngine(MappedDataFile data, ProbeStats stats) {
+        super(data);
+        this.stats = stats;
+        this.fileId = NEXT_FILE_ID.getAndIncrement() & 0xFFFF;
+        this.dataOffset = data.getDataOffset();
+        this.elementSize = data.getElementSize();
+    }
+
+    public static InstrumentedSearchEngine open(String filename, ProbeStats stats) throws IOException {
+        return new InstrumentedSearchEngine(MappedDataFile.open(filename), stats);
+    }
+
+    public ProbeStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public long readElement(long index) {
+        stats.recordRead(fileId, dataOffset + index * elementSize);
+        return super.readElement(index);
+    }
+
+    @Override
+    long countLessThan(long from, long to, long target) {
+        stats.recordScan(fileId, dataOffset + from * elementSize, dataOffset + to * elementSize, to - from);
+        return super.countLessThan(from, to, target);
+    }
+}
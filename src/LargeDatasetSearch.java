@@ -1,283 +1,327 @@
+import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import javax.swing.JTextArea;
+import java.util.Arrays;
+import java.util.LongSummaryStatistics;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongUnaryOperator;
 
+// Search session over one data file. The mapping, and the indexes built on it on first use, are
+// kept for every later query until close() releases them.
 public class LargeDatasetSearch {
 
-    private MappedByteBuffer buffer;
-    private int numElements;
-    private int elementSize;
-    private ByteOrder byteOrder;
-    private JTextArea outputArea;
-
-    public LargeDatasetSearch(String filename, int numElements, int elementSize, ByteOrder byteOrder, JTextArea outputArea) throws IOException {
-        this.numElements = numElements;
-        this.elementSize = elementSize;
-        this.byteOrder = byteOrder;
+    // Batches are searched in slices of this many targets, with progress reported after each
+    private static final int BATCH_SLICE = 1 << 16;
+
+    private SearchEngine engine;
+    private SearchEngine instrumented; // Same mapping as engine, counting reads into probeStats
+    private final ProbeStats probeStats = new ProbeStats();
+    private SearchMetrics metrics;
+    private LearnedIndex learnedIndex;
+    private EytzingerIndex eytzingerIndex;
+    private CompressedDataFile compressedFile;
+    private IncrementalDataset incremental; // Inserted values, in runs next to the data file and in memory
+    private AdaptiveSearch adaptiveSearch;
+    private String filename;
+    private DataFileHeader header;
+    private TextAreaOutput outputArea;
+    private SearchListener traceListener;
+    private SearchCache cache;
+
+    // The element count, width, signedness and byte order come from the file's own header
+    public LargeDatasetSearch(String filename, TextAreaOutput outputArea) throws IOException {
         this.outputArea = outputArea;
+        this.filename = filename;
 
-        // Open the file and open into memory
-        RandomAccessFile file = new RandomAccessFile(filename, "r");
-        FileChannel channel = file.getChannel();
-        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-        buffer.order(this.byteOrder);
-        channel.close();
-        file.close();
-    }
+        // Open the file and open into memory. Single lookups go through the instrumented engine to
+        // report their probes and pages; batches and range scans use the plain one at full speed.
+        MappedDataFile data = MappedDataFile.open(filename);
+        engine = new SearchEngine(data);
+        instrumented = new InstrumentedSearchEngine(data, probeStats);
+        header = data.getHeader();
 
-    private long readElement(int index) {
-        int position = index * elementSize;
-        buffer.position(position);
-
-        switch (elementSize) {
-            case 1:
-                return buffer.get() & 0xFF; // Unsigned byte
-            case 2:
-                return buffer.getShort() & 0xFFFF; // Unsigned short
-            case 4:
-                return buffer.getInt() & 0xFFFFFFFFL; // Unsigned int
-            case 8:
-                return buffer.getLong(); // Java unsigned long
-            default:
-                throw new IllegalArgumentException("Unsupported element size.");
-        }
+        // Sampling reads a fixed number of elements, so the density profile is cheap to build up front
+        adaptiveSearch = AdaptiveSearch.build(instrumented);
     }
 
-    public int binarySearch(long target) {
-        outputArea.append("Algorithm: Binary Search\n");
-        outputArea.append("Time Complexity: O(log n)\n");
+    public String getFilename() {
+        return filename;
+    }
 
+    // Pre-warms the page cache so the first queries run at the same speed as later ones
+    public void preload() {
         long startTime = System.nanoTime();
+        engine.getData().load();
+        outputArea.append(String.format("Preloaded %d bytes in %.4f ms\n", engine.getData().getSizeInBytes(),
+                (System.nanoTime() - startTime) / 1_000_000.0));
+    }
 
-        int left = 0;
-        int right = numElements - 1;
-
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            long midValue = readElement(mid);
-            outputArea.append(String.format("Checking index %d: value = %d\n", mid, midValue));
-
-            if (midValue == target) {
-                long endTime = System.nanoTime();
-                outputExecutionTime(startTime, endTime);
-                return mid;
-            } else if (midValue < target) {
-                left = mid + 1;
-                outputArea.append(String.format("Target greater than value at index %d. New left index: %d\n", mid, left));
-            } else {
-                right = mid - 1;
-                outputArea.append(String.format("Target less than value at index %d. New right index: %d\n", mid, right));
-            }
+    public DataFileHeader getHeader() {
+        return header;
+    }
+
+    // Step-by-step output is off by default; the probes themselves run silently in SearchEngine
+    public void setTraceEnabled(boolean enabled) {
+        traceListener = enabled ? new TextAreaTraceListener(outputArea) : null;
+    }
+
+    // Optional result cache; it is cleared automatically if it was filled from a different file
+    public void setCache(SearchCache cache) {
+        this.cache = cache;
+        if (cache != null) {
+            cache.bind(new File(filename));
         }
+    }
 
-        long endTime = System.nanoTime();
-        outputExecutionTime(startTime, endTime);
-        return -1; // Target not found
+    // Per-algorithm metrics every untraced lookup is recorded into; pass null to stop recording
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SearchEngine getEngine() {
+        return engine;
+    }
+
+    public long binarySearch(long target) {
+        outputArea.append("Algorithm: Binary Search\n");
+        outputArea.append("Time Complexity: O(log n)\n");
+
+        return timedSearch("Binary Search", target, t -> instrumented.binarySearch(t, traceListener));
     }
 
-    public int exponentialSearch(long target) {
+    public long exponentialSearch(long target) {
         outputArea.append("Algorithm: Exponential Search\n");
         outputArea.append("Time Complexity: O(log n)\n");
 
-        long startTime = System.nanoTime();
+        return timedSearch("Exponential Search", target, t -> instrumented.exponentialSearch(t, traceListener));
+    }
+
+    public long interpolationSearch(long target) {
+        outputArea.append("Algorithm: Interpolation Search\n");
+        outputArea.append("Time Complexity: O(log log n) on average, O(n) worst-case\n");
 
-        if (readElement(0) == target) {
-            outputArea.append("Found target at index 0\n");
-            long endTime = System.nanoTime();
-            outputExecutionTime(startTime, endTime);
-            return 0;
+        return timedSearch("Interpolation Search", target, t -> instrumented.interpolationSearch(t, traceListener));
+    }
+
+    public long hybridSearch(long target) {
+        outputArea.append("Algorithm: Hybrid Search (Exponential + Interpolation + Binary)\n");
+
+        return timedSearch("Hybrid Search", target, t -> instrumented.hybridSearch(t, traceListener));
+    }
+
+    public long learnedIndexSearch(long target) {
+        outputArea.append("Algorithm: Learned Index Search (Piecewise Linear Model)\n");
+        outputArea.append("Time Complexity: O(log s + log epsilon) for s model segments\n");
+
+        // The model is built once per mapped file and reused by later searches
+        if (learnedIndex == null) {
+            learnedIndex = LearnedIndex.build(instrumented);
+            outputArea.append(String.format("Model built in %.4f ms: %d segments, %d bytes (epsilon = %d)\n",
+                    learnedIndex.getBuildTimeNanos() / 1_000_000.0, learnedIndex.getSegmentCount(),
+                    learnedIndex.getSizeInBytes(), learnedIndex.getEpsilon()));
         }
 
-        int range = 1;
-        while (range < numElements && readElement(range) <= target) {
-            outputArea.append(String.format("Range doubled to %d\n", range));
-            range *= 2;
+        return timedSearch("Learned Index Search", target, t -> learnedIndex.search(t, traceListener));
+    }
+
+    public long eytzingerSearch(long target) throws IOException {
+        outputArea.append("Algorithm: Eytzinger Search (Cache-Friendly Layout)\n");
+        outputArea.append("Time Complexity: O(log n)\n");
+
+        // The sidecar file is written next to the data file once and reused while it is up to date
+        if (eytzingerIndex == null) {
+            long buildStart = System.nanoTime();
+            eytzingerIndex = EytzingerIndex.open(instrumented, filename);
+            outputArea.append(String.format("Layout ready in %.4f ms: %s\n",
+                    (System.nanoTime() - buildStart) / 1_000_000.0, EytzingerIndex.sidecarName(filename)));
         }
 
-        int left = range / 2;
-        int right = Math.min(range, numElements - 1);
-        outputArea.append(String.format("Performing Binary Search between indexes %d and %d\n", left, right));
+        return timedSearch("Eytzinger Search", target, t -> eytzingerIndex.search(t, traceListener));
+    }
 
-        int result = binarySearchInRange(target, left, right);
+    public long compressedSearch(long target) throws IOException {
+        outputArea.append("Algorithm: Compressed Block Search (Frame-of-Reference Bit-Packing)\n");
+        outputArea.append("Time Complexity: O(log b + log B) for b blocks of B elements\n");
+
+        // Like the Eytzinger layout, the compressed copy is written next to the data file once
+        if (compressedFile == null) {
+            long buildStart = System.nanoTime();
+            compressedFile = CompressedDataFile.open(instrumented, filename);
+            outputArea.append(String.format("Compressed copy ready in %.4f ms: %s\n",
+                    (System.nanoTime() - buildStart) / 1_000_000.0, CompressedDataFile.sidecarName(filename)));
+            outputArea.append(compressedFile.describe() + "\n");
+        }
+
+        return timedSearch("Compressed Block Search", target, t -> compressedFile.search(t, traceListener));
+    }
 
+    // Inserts go into runs next to the data file; the file itself is never rewritten. They are
+    // written out straight away rather than kept in memory, as the application can exit at any
+    // time; compaction keeps the number of runs bounded.
+    public void insertValues(long[] values) throws IOException {
+        long startTime = System.nanoTime();
+        incremental().insert(values);
+        incremental.flush();
         long endTime = System.nanoTime();
+
+        outputArea.append(String.format("Inserted %d values\n", values.length));
+        outputArea.append(incremental.describe() + "\n");
         outputExecutionTime(startTime, endTime);
-        return result;
     }
 
-    private int binarySearchInRange(long target, int left, int right) {
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            long midValue = readElement(mid);
-            outputArea.append(String.format("Checking index %d: value = %d\n", mid, midValue));
-
-            if (midValue == target) {
-                return mid;
-            } else if (midValue < target) {
-                left = mid + 1;
-                outputArea.append(String.format("Target greater than value at index %d. New left index: %d\n", mid, left));
-            } else {
-                right = mid - 1;
-                outputArea.append(String.format("Target less than value at index %d. New right index: %d\n", mid, right));
-            }
+    // Searches the data file together with every inserted value. The position is in the merged,
+    // sorted view of both, so results are not cached alongside those of the other algorithms.
+    public long incrementalSearch(long target) throws IOException {
+        outputArea.append("Algorithm: Incremental Search (Data File + Inserted Runs)\n");
+        outputArea.append("Time Complexity: O(r + log n) for r runs, most skipped by their Bloom filters\n");
+        outputArea.append(incremental().describe() + "\n");
+
+        long position = timedSearch("Incremental Search", target, incremental::search, null);
+        outputArea.append(String.format("Occurrences: %d\n", incremental.count(target, target)));
+        return position;
+    }
+
+    // Opened on first use; it picks up the runs inserted by earlier sessions
+    private IncrementalDataset incremental() throws IOException {
+        if (incremental == null) {
+            incremental = IncrementalDataset.open(instrumented, filename);
         }
-        return -1;
+        return incremental;
     }
 
-    public int interpolationSearch(long target) {
-        outputArea.append("Algorithm: Interpolation Search\n");
-        outputArea.append("Time Complexity: O(log log n) on average, O(n) worst-case\n");
+    // Counts and aggregates every value in [low, high], streaming them straight from the file
+    public LongSummaryStatistics rangeQuery(long low, long high) {
+        outputArea.append(String.format("Range Query: [%d, %d]\n", low, high));
 
         long startTime = System.nanoTime();
+        long first = engine.lowerBound(low);
+        long end = low > high ? first : engine.upperBound(high);
+        LongSummaryStatistics statistics = engine.range(low, high).summaryStatistics();
+        long endTime = System.nanoTime();
 
-        int left = 0;
-        int right = numElements - 1;
-
-        while (left <= right && target >= readElement(left) && target <= readElement(right)) {
-            if (left == right) {
-                if (readElement(left) == target) {
-                    outputArea.append("Found target at index " + left + "\n");
-                    long endTime = System.nanoTime();
-                    outputExecutionTime(startTime, endTime);
-                    return left;
-                }
-                break;
-            }
+        outputArea.append(String.format("Lower bound index: %d, upper bound index: %d\n", first, end));
+        if (statistics.getCount() > 0) {
+            outputArea.append(String.format("Count: %d, sum: %d, min: %d, max: %d, average: %.2f\n", statistics.getCount(),
+                    statistics.getSum(), statistics.getMin(), statistics.getMax(), statistics.getAverage()));
+        } else {
+            outputArea.append("Count: 0\n");
+        }
+        if (incremental != null && incremental.getInsertedCount() > 0) {
+            outputArea.append(String.format("Count including inserted values: %d\n", incremental.count(low, high)));
+        }
+        outputExecutionTime(startTime, endTime);
+        return statistics;
+    }
 
-            long leftVal = readElement(left);
-            long rightVal = readElement(right);
+    public long autoSearch(long target) {
+        outputArea.append("Algorithm: Auto (Adaptive Selection)\n");
+        outputArea.append(adaptiveSearch.describe() + "\n");
 
-            // Avoid division by zero
-            if (rightVal == leftVal) {
-                break;
-            }
+        outputArea.append("Auto selected: " + adaptiveSearch.algorithmFor(target) + "\n");
+        return timedSearch("Auto (Adaptive)", target, t -> adaptiveSearch.search(t, traceListener));
+    }
 
-            // Estimate the position
-            int pos = left + (int)(((double)(right - left) / (rightVal - leftVal)) * (target - leftVal));
+    public long[] batchSearch(long[] targets) {
+        return batchSearch(targets, null);
+    }
 
-            // Ensure pos is within array bounds
-            if (pos < left || pos > right) {
-                break;
-            }
+    // The progress callback receives the fraction done after each slice; it may throw to cancel
+    public long[] batchSearch(long[] targets, DoubleConsumer progress) {
+        outputArea.append("Algorithm: Batch Search (Sorted Probes + Galloping Sweep)\n");
+        outputArea.append(String.format("Lookups: %d\n", targets.length));
 
-            long posValue = readElement(pos);
-            outputArea.append(String.format("Estimated position %d: value = %d\n", pos, posValue));
-
-            if (posValue == target) {
-                long endTime = System.nanoTime();
-                outputExecutionTime(startTime, endTime);
-                return pos;
-            } else if (posValue < target) {
-                left = pos + 1;
-                outputArea.append(String.format("Target greater than value at index %d. New left index: %d\n", pos, left));
-            } else {
-                right = pos - 1;
-                outputArea.append(String.format("Target less than value at index %d. New right index: %d\n", pos, right));
+        long startTime = System.nanoTime();
+        long[] results = new long[targets.length];
+        for (int from = 0; from < targets.length; from += BATCH_SLICE) {
+            int to = Math.min(from + BATCH_SLICE, targets.length);
+            long[] slice = engine.batchSearch(Arrays.copyOfRange(targets, from, to));
+            System.arraycopy(slice, 0, results, from, slice.length);
+            if (progress != null) {
+                progress.accept((double) to / targets.length);
             }
         }
-
         long endTime = System.nanoTime();
+
         outputExecutionTime(startTime, endTime);
-        return -1;
+        outputThroughput(targets.length, startTime, endTime);
+        return results;
     }
-    public int hybridSearch(long target) {
-        outputArea.append("Algorithm: Hybrid Search (Exponential + Interpolation + Binary)\n");
-    
+
+    // Serves the target from the cache when possible, otherwise runs the algorithm, caches the result
+    // and reports the reads it made. Traced lookups are left out of the metrics, as their time is
+    // mostly spent writing the trace.
+    private long timedSearch(String algorithm, long target, LongUnaryOperator search) {
+        return timedSearch(algorithm, target, search, cache);
+    }
+
+    private long timedSearch(String algorithm, long target, LongUnaryOperator search, SearchCache cache) {
+        probeStats.reset();
         long startTime = System.nanoTime();
-    
-        // Step 1: Exponential Search to narrow the range
-        if (readElement(0) == target) {
-            outputArea.append("Found target at index 0\n");
-            long endTime = System.nanoTime();
-            outputExecutionTime(startTime, endTime);
-            return 0;
-        }
-    
-        int range = 1;
-        while (range < numElements && readElement(range) < target) {
-            outputArea.append(String.format("Exponential step: range = %d\n", range));
-            range *= 2;
-        }
-    
-        int left = range / 2;
-        int right = Math.min(range, numElements - 1);
-        outputArea.append(String.format("Range narrowed to: left = %d, right = %d\n", left, right));
-    
-        // Step 2: Interpolation Search within the range
-        while (left <= right && target >= readElement(left) && target <= readElement(right)) {
-            if (left == right) {
-                if (readElement(left) == target) {
-                    outputArea.append("Found target at index " + left + "\n");
-                    long endTime = System.nanoTime();
-                    outputExecutionTime(startTime, endTime);
-                    return left;
-                }
-                break;
-            }
-    
-            long leftVal = readElement(left);
-            long rightVal = readElement(right);
-    
-            // Avoid division by zero
-            if (rightVal == leftVal) {
-                break;
-            }
-    
-            // Estimate the position
-            int pos = left + (int)(((double)(right - left) / (rightVal - leftVal)) * (target - leftVal));
-    
-            // Ensure pos is within array bounds
-            if (pos < left || pos > right) {
-                break;
-            }
-    
-            long posValue = readElement(pos);
-            outputArea.append(String.format("Estimated position %d: value = %d\n", pos, posValue));
-    
-            if (posValue == target) {
-                outputArea.append("Found target at index " + pos + "\n");
-                long endTime = System.nanoTime();
-                outputExecutionTime(startTime, endTime);
-                return pos;
-            } else if (posValue < target) {
-                left = pos + 1;
-                outputArea.append(String.format("Target greater than value at index %d. New left index: %d\n", pos, left));
-            } else {
-                right = pos - 1;
-                outputArea.append(String.format("Target less than value at index %d. New right index: %d\n", pos, right));
+        long result = cache == null ? SearchCache.ABSENT : cache.get(target);
+        boolean cached = result != SearchCache.ABSENT;
+        if (!cached) {
+            result = search.applyAsLong(target);
+            if (cache != null) {
+                cache.put(target, result);
             }
         }
-    
-        // Step 3: Binary Search fallback
-        outputArea.append("Switching to Binary Search.\n");
-        int result = binarySearchInRange(target, left, right);
-    
         long endTime = System.nanoTime();
+
         outputExecutionTime(startTime, endTime);
+        if (cached) {
+            outputArea.append("Result served from cache\n");
+        } else {
+            outputArea.append(String.format("Probes: %d, pages touched: %d\n", probeStats.getProbes(), probeStats.getPagesTouched()));
+            if (metrics != null && traceListener == null) {
+                metrics.record(algorithm, endTime - startTime, probeStats.getProbes(), probeStats.getPagesTouched(), result >= 0);
+            }
+        }
         return result;
     }
-    
 
     private void outputExecutionTime(long startTime, long endTime) {
         long duration = endTime - startTime;
         double milliseconds = duration / 1_000_000.0;
-        outputArea.append(String.format("Execution Time: %.4f ms\n", milliseconds));
+        outputArea.append(String.format("Execution Time: %.4f ms%s\n", milliseconds,
+                traceListener != null ? " (includes trace output)" : ""));
     }
 
-    public void outputSpaceComplexity() {
-        Runtime runtime = Runtime.getRuntime();
-        long totalMemory = runtime.totalMemory(); // Total memory in JVM
-        long freeMemory = runtime.freeMemory();   // Free memory in JVM
-        long usedMemory = totalMemory - freeMemory;
+    private void outputThroughput(int lookups, long startTime, long endTime) {
+        double seconds = (endTime - startTime) / 1_000_000_000.0;
+        outputArea.append(String.format("Throughput: %.0f lookups/second\n", lookups / seconds));
+    }
 
-        outputArea.append(String.format("Space Complexity: Approximately %d bytes used\n", usedMemory));
+    // Memory this session holds: the mappings, which live off-heap and are paged in on demand, and
+    // the indexes built on the heap
+    public void outputSpaceComplexity() {
+        long mapped = engine.getData().getSizeInBytes() + (eytzingerIndex != null ? eytzingerIndex.getSizeInBytes() : 0)
+                + (compressedFile != null ? compressedFile.getSizeInBytes() : 0) + (incremental != null ? incremental.getSizeInBytes() : 0);
+        long onHeap = adaptiveSearch.getSizeInBytes() + (learnedIndex != null ? learnedIndex.getSizeInBytes() : 0)
+                + (compressedFile != null ? compressedFile.getIndexSizeInBytes() : 0)
+                + (incremental != null ? incremental.getIndexSizeInBytes() : 0);
+        outputArea.append(String.format("Space Complexity: %d bytes mapped, %d bytes of on-heap indexes\n", mapped, onHeap));
     }
 
-    public void close() {
-        // Clean up buffer
-        buffer = null;
+    // Unmaps the data file and its sidecars right away instead of leaving them to the GC. Inserted
+    // values still in memory are written out as a run first.
+    public void close() throws IOException {
+        if (incremental != null) {
+            incremental.close();
+        }
+        if (eytzingerIndex != null) {
+            eytzingerIndex.close();
+        }
+        if (compressedFile != null) {
+            compressedFile.close();
+        }
+        if (engine != null) {
+            engine.close();
+        }
+        engine = null;
+        instrumented = null;
+        learnedIndex = null;
+        eytzingerIndex = null;
+        compressedFile = null;
+        incremental = null;
+        adaptiveSearch = null;
     }
 }
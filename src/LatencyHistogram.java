@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+// Log-linear latency histogram in the style of HdrHistogram: 16 linear sub-buckets per power of
+// two, so any recorded value is reported within about 6% using a fixed 8 KB of counters.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long totalValue;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        totalValue += value;
+        minValue = Math.min(minValue, value);
+        maxValue = Math.max(maxValue, value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value that falls into the given bucket
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+    // Value at the given percentile (0-100), reported as the upper bound of its bucket
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMinValue() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    public String summary(String unit) {
+        return String.format("count=%d min=%d%s p50=%d%s p90=%d%s p99=%d%s p99.9=%d%s max=%d%s mean=%.1f%s",
+                totalCount, getMinValue(), unit, getValueAtPercentile(50), unit, getValueAtPercentile(90), unit,
+                getValueAtPercentile(99), unit, getValueAtPercentile(99.9), unit, maxValue, unit, getMean(), unit);
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+// Piecewise linear model over a sorted data file (PGM-style). Each segment maps a key to the
+// position of its first occurrence with an error of at most epsilon, so a lookup is a search over
+// the small on-heap segment table followed by a binary search of about 2 * epsilon elements.
+public class LearnedIndex {
+
+    public static final int DEFAULT_EPSILON = 32;
+
+    // Bytes per segment: first key, slope and start position
+    private static final int SEGMENT_BYTES = Long.BYTES + Double.BYTES + Long.BYTES;
+
+    private final SearchEngine engine;
+    private final int epsilon;
+    private final long[] firstKeys;
+    private final double[] slopes;
+    private final long[] startPositions;
+    private final long buildTimeNanos;
+
+    private LearnedIndex(SearchEngine engine, int epsilon, long[] firstKeys, double[] slopes, long[] startPositions, long buildTimeNanos) {
+        this.engine = engine;
+        this.epsilon = epsilon;
+        this.firstKeys = firstKeys;
+        this.slopes = slopes;
+        this.startPositions = startPositions;
+        this.buildTimeNanos = buildTimeNanos;
+    }
+
+    public static LearnedIndex build(SearchEngine engine) {
+        return build(engine, DEFAULT_EPSILON);
+    }
+
+    // One pass over the file with a shrinking cone: a segment grows while some slope through its
+    // origin keeps every (key, first position) pair within epsilon, then a new one is started.
+    // The pass reads the mapping itself, so building on an instrumented engine only counts lookups.
+    public static LearnedIndex build(SearchEngine engine, int epsilon) {
+        if (epsilon < 1) {
+            throw new IllegalArgumentException("Epsilon must be at least 1.");
+        }
+        long startTime = System.nanoTime();
+
+        MappedDataFile data = engine.getData();
+        long numElements = data.getNumElements();
+        int capacity = 16;
+        long[] firstKeys = new long[capacity];
+        double[] slopes = new double[capacity];
+        long[] startPositions = new long[capacity];
+        int segments = 0;
+
+        long originKey = 0;
+        long originPos = 0;
+        double slopeLow = 0;
+        double slopeHigh = Double.POSITIVE_INFINITY;
+        long previousKey = 0;
+
+        for (long i = 0; i < numElements; i++) {
+            long key = data.readElement(i);
+            if (i > 0 && key == previousKey) {
+                continue; // Only the first occurrence of each key is modelled
+            }
+            previousKey = key;
+
+            if (i > 0) {
+                double dx = distance(originKey, key);
+                double low = (i - epsilon - originPos) / dx;
+                double high = (i + epsilon - originPos) / dx;
+                if (low <= slopeHigh && high >= slopeLow) {
+                    slopeLow = Math.max(slopeLow, low);
+                    slopeHigh = Math.min(slopeHigh, high);
+                    continue;
+                }
+
+                // The point falls outside the cone: close the current segment
+                if (segments == capacity) {
+                    capacity *= 2;
+                    firstKeys = Arrays.copyOf(firstKeys, capacity);
+                    slopes = Arrays.copyOf(slopes, capacity);
+                    startPositions = Arrays.copyOf(startPositions, capacity);
+                }
+                firstKeys[segments] = originKey;
+                slopes[segments] = segmentSlope(slopeLow, slopeHigh);
+                startPositions[segments] = originPos;
+                segments++;
+            }
+
+            originKey = key;
+            originPos = i;
+            slopeLow = 0;
+            slopeHigh = Double.POSITIVE_INFINITY;
+        }
+
+        if (numElements > 0) {
+            firstKeys = Arrays.copyOf(firstKeys, segments + 1);
+            slopes = Arrays.copyOf(slopes, segments + 1);
+            startPositions = Arrays.copyOf(startPositions, segments + 1);
+            firstKeys[segments] = originKey;
+            slopes[segments] = segmentSlope(slopeLow, slopeHigh);
+            startPositions[segments] = originPos;
+            segments++;
+        } else {
+            firstKeys = new long[0];
+            slopes = new double[0];
+            startPositions = new long[0];
+        }
+
+        return new LearnedIndex(engine, epsilon, firstKeys, slopes, startPositions, System.nanoTime() - startTime);
+    }
+
+    private static double segmentSlope(double slopeLow, double slopeHigh) {
+        // A segment holding a single key has an unbounded cone; any slope is exact for it
+        return slopeHigh == Double.POSITIVE_INFINITY ? slopeLow : (slopeLow + slopeHigh) / 2;
+    }
+
+    // Exact difference of two keys with from <= to. It is taken in long arithmetic and read as
+    // unsigned, so neither large keys nor a range wider than Long.MAX_VALUE lose precision before
+    // the conversion to double.
+    private static double distance(long from, long to) {
+        long difference = to - from;
+        return difference >= 0 ? difference : (double) (difference >>> 1) * 2 + (difference & 1);
+    }
+
+    public long search(long target) {
+        return search(target, null);
+    }
+
+    public long search(long target, SearchListener listener) {
+        if (!engine.inBounds(target)) {
+            return -1;
+        }
+        // Last segment whose first key is <= target
+        int lo = 0;
+        int hi = firstKeys.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstKeys[mid] <= target) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        // One extra slot on each side absorbs truncation and floating-point rounding. A target in the
+        // gap after a segment can be predicted past the end, so the prediction is clamped to the file.
+        long numElements = engine.getNumElements();
+        double offset = Math.min(slopes[lo] * distance(firstKeys[lo], target), numElements);
+        long predicted = Math.min(startPositions[lo] + (long) offset, numElements - 1);
+        long left = Math.max(0, predicted - epsilon - 1);
+        long right = Math.min(numElements - 1, predicted + epsilon + 1);
+        if (listener != null) {
+            listener.rangeNarrowed(left, right);
+        }
+        return engine.binarySearchInRange(target, left, right, listener);
+    }
+
+    public int getEpsilon() {
+        return epsilon;
+    }
+
+    public int getSegmentCount() {
+        return firstKeys.length;
+    }
+
+    public long getSizeInBytes() {
+        return (long) firstKeys.length * SEGMENT_BYTES;
+    }
+
+    public long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+}
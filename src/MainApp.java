@@ -3,19 +3,39 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
 import javax.swing.*;
 
 public class MainApp {
 
     private JFrame frame;
     private JTextArea outputArea;
+    private TextAreaOutput output;
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private BackgroundTask<?> currentTask; // Set until the task's work has actually stopped
+    private JCheckBoxMenuItem traceItem;
+    private JCheckBoxMenuItem cacheItem;
+    private SearchCache searchCache = new SearchCache(1 << 16);
+    private SearchMetrics searchMetrics = new SearchMetrics(); // Kept across files, published over JMX
     private File dataFile;
-    private int numElements = 1000000;
-    private int elementSize = 4; // 4 bytes for integers
+    private LargeDatasetSearch session; // Open on dataFile and reused by every query until the file changes
+    private JCheckBoxMenuItem preloadItem;
+    private int numElements = 1000000; // Size of newly generated files; opened files describe themselves
     private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
-    private String[] algorithms = {"Binary Search", "Exponential Search", "Interpolation Search", "Hybrid Search"};
+    private String[] algorithms = {"Binary Search", "Exponential Search", "Interpolation Search", "Hybrid Search", "Learned Index Search", "Eytzinger Search", "Compressed Block Search", "Incremental Search", "Auto (Adaptive)"};
 
+    // With arguments the searches run headless on the command line (see SearchCli); without, the GUI opens
     public static void main(String[] args) {
+        if (args.length > 0) {
+            SearchCli.main(args);
+            return;
+        }
         SwingUtilities.invokeLater(() -> new MainApp().createAndShowGUI());
     }
 
@@ -25,6 +45,7 @@ public class MainApp {
 
         outputArea = new JTextArea(20, 50);
         outputArea.setEditable(false);
+        output = new TextAreaOutput(outputArea);
 
         JScrollPane scrollPane = new JScrollPane(outputArea);
 
@@ -44,35 +65,196 @@ public class MainApp {
         buttonPanel.add(runButton);
         buttonPanel.add(exitButton);
 
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Idle");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> {
+            if (currentTask != null) {
+                currentTask.cancel(true);
+            }
+        });
+
+        JPanel statusPanel = new JPanel();
+        statusPanel.add(progressBar);
+        statusPanel.add(cancelButton);
+
         JMenuBar menuBar = new JMenuBar();
         JMenu menu = new JMenu("Options");
         JMenuItem exportItem = new JMenuItem("Export Output");
         JMenuItem newRunItem = new JMenuItem("Start New Run");
+        JMenuItem batchItem = new JMenuItem("Run Batch Search");
+        JMenuItem rangeItem = new JMenuItem("Run Range Query");
+        JMenuItem insertItem = new JMenuItem("Insert Values");
+        traceItem = new JCheckBoxMenuItem("Show Search Trace");
+        cacheItem = new JCheckBoxMenuItem("Enable Query Cache");
+        JMenuItem cacheStatsItem = new JMenuItem("Show Cache Statistics");
+        JMenuItem metricsItem = new JMenuItem("Show Search Metrics");
+        JMenuItem exportMetricsItem = new JMenuItem("Export Search Metrics");
+        preloadItem = new JCheckBoxMenuItem("Preload Data File Into Memory");
         menu.add(exportItem);
         menu.add(newRunItem);
+        menu.add(batchItem);
+        menu.add(rangeItem);
+        menu.add(insertItem);
+        menu.add(traceItem);
+        menu.add(cacheItem);
+        menu.add(cacheStatsItem);
+        menu.add(metricsItem);
+        menu.add(exportMetricsItem);
+        menu.add(preloadItem);
         menuBar.add(menu);
         frame.setJMenuBar(menuBar);
 
         exportItem.addActionListener(new ExportAction());
-        newRunItem.addActionListener(e -> outputArea.setText(""));
+        newRunItem.addActionListener(e -> output.clear());
+        batchItem.addActionListener(new BatchAction());
+        rangeItem.addActionListener(new RangeAction());
+        insertItem.addActionListener(new InsertAction());
+        cacheStatsItem.addActionListener(e -> output.append(searchCache.describe() + "\n"));
+        metricsItem.addActionListener(e -> output.append(searchMetrics.describe() + "\n"));
+        exportMetricsItem.addActionListener(new ExportMetricsAction());
+
+        try {
+            searchMetrics.register("gui");
+        } catch (JMException ex) {
+            // The GUI works without JMX; the metrics stay available from the menu
+            ex.printStackTrace();
+        }
 
         frame.getContentPane().add(buttonPanel, "North");
         frame.getContentPane().add(scrollPane, "Center");
+        frame.getContentPane().add(statusPanel, "South");
 
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
 
+    // Work that runs off the Event Dispatch Thread, with the progress bar and Cancel button wired up.
+    // The result, or the error dialog, is handled back on the EDT once the work completes.
+    private abstract class BackgroundTask<T> extends SwingWorker<T, Void> {
+
+        private final String errorMessage;
+        // Holds the result until it is claimed by cancelled(), so a cancel that arrives after the
+        // work finished still releases what the work produced
+        private final AtomicReference<T> unclaimed = new AtomicReference<>();
+
+        BackgroundTask(String errorMessage) {
+            this.errorMessage = errorMessage;
+        }
+
+        abstract T work() throws Exception;
+
+        void succeeded(T result) {
+        }
+
+        // Called once with the result of work that completed after the task was cancelled
+        void cancelled(T result) {
+        }
+
+        // Called from the work with the fraction done; throws once the task has been cancelled
+        void updateProgress(double fraction) {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            setProgress((int) Math.min(100, Math.round(fraction * 100)));
+        }
+
+        @Override
+        protected T doInBackground() throws Exception {
+            try {
+                T result = work();
+                unclaimed.set(result);
+                if (isCancelled()) {
+                    releaseUnclaimed();
+                }
+                return result;
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    if (currentTask == this) {
+                        currentTask = null;
+                    }
+                });
+            }
+        }
+
+        @Override
+        protected void done() {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue(0);
+            progressBar.setString("Idle");
+            cancelButton.setEnabled(false);
+
+            if (isCancelled()) {
+                output.append("Operation cancelled.\n");
+                releaseUnclaimed();
+                return;
+            }
+            try {
+                succeeded(get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                ex.getCause().printStackTrace();
+                JOptionPane.showMessageDialog(frame, errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        private void releaseUnclaimed() {
+            T result = unclaimed.getAndSet(null);
+            if (result != null) {
+                cancelled(result);
+            }
+        }
+    }
+
+    // Only one task runs at a time; a cancelled one keeps the slot until its work has stopped
+    private boolean isBusy() {
+        if (currentTask != null) {
+            JOptionPane.showMessageDialog(frame, "Another operation is still running. Please wait or cancel it.", "Busy", JOptionPane.WARNING_MESSAGE);
+            return true;
+        }
+        return false;
+    }
+
+    private void startTask(BackgroundTask<?> task, String description, boolean reportsProgress) {
+        currentTask = task;
+        progressBar.setIndeterminate(!reportsProgress);
+        progressBar.setValue(0);
+        progressBar.setString(description);
+        cancelButton.setEnabled(true);
+        task.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName()) && !task.isCancelled()) {
+                progressBar.setValue((Integer) event.getNewValue());
+                progressBar.setString(description + " " + event.getNewValue() + "%");
+            }
+        });
+        task.execute();
+    }
+
+    private boolean checkDataFile() {
+        if (session == null || !dataFile.exists()) {
+            JOptionPane.showMessageDialog(frame, "No data file available. Please upload or generate one.", "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+
     // Upload .bin file
     private class UploadAction implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
+            if (isBusy()) {
+                return;
+            }
             JFileChooser fileChooser = new JFileChooser();
             int result = fileChooser.showOpenDialog(frame);
             if (result == JFileChooser.APPROVE_OPTION) {
                 dataFile = fileChooser.getSelectedFile();
-                outputArea.append("Uploaded file: " + dataFile.getAbsolutePath() + "\n");
+                output.append("Uploaded file: " + dataFile.getAbsolutePath() + "\n");
+                openSession();
             }
         }
     }
@@ -81,82 +263,290 @@ public class MainApp {
     private class GenerateAction implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
-            try {
-                dataFile = new File("data.bin");
-                GenerateBinaryData.generateDataFile(dataFile.getName(), numElements, byteOrder);
-                outputArea.append("Generated new data file: " + dataFile.getAbsolutePath() + "\n");
-            } catch (IOException ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(frame, "Error generating data file.", "Error", JOptionPane.ERROR_MESSAGE);
+            if (isBusy()) {
+                return;
             }
+            File file = new File("data.bin");
+            // The file may be the one that is open; it must be unmapped before it is rewritten
+            LargeDatasetSearch previous = session;
+            session = null;
+            startTask(new BackgroundTask<Void>("Error generating data file.") {
+                @Override
+                Void work() throws IOException {
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    try {
+                        GenerateBinaryData.generateDataFile(file.getName(), numElements, Integer.BYTES, byteOrder,
+                                GenerateBinaryData.Distribution.SKEWED, System.nanoTime(), this::updateProgress);
+                    } finally {
+                        // A cancelled run leaves a file without a header; do not let it be opened later
+                        if (isCancelled()) {
+                            Files.deleteIfExists(file.toPath());
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                void succeeded(Void result) {
+                    dataFile = file;
+                    output.append("Generated new data file: " + dataFile.getAbsolutePath() + "\n");
+                    openSession();
+                }
+            }, "Generating", true);
         }
     }
 
     private class RunAction implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
-            if (dataFile == null || !dataFile.exists()) {
-                JOptionPane.showMessageDialog(frame, "No data file available. Please upload or generate one.", "Error", JOptionPane.ERROR_MESSAGE);
+            if (isBusy() || !checkDataFile()) {
                 return;
             }
 
+            String input = JOptionPane.showInputDialog(frame, "Enter the target value to search for:", "Search Input", JOptionPane.QUESTION_MESSAGE);
+            if (input == null || input.isEmpty()) {
+                return;
+            }
+            long target;
             try {
-                String input = JOptionPane.showInputDialog(frame, "Enter the target value to search for:", "Search Input", JOptionPane.QUESTION_MESSAGE);
-                if (input != null && !input.isEmpty()) {
-                    long target = Long.parseLong(input);
-
-                    // Algorithm selection
-                    String algorithm = (String) JOptionPane.showInputDialog(frame, "Select Search Algorithm:", "Algorithm Selection",
-                            JOptionPane.PLAIN_MESSAGE, null, algorithms, algorithms[0]);
-
-                    if (algorithm != null) {
-                        outputArea.append("Starting search for target value: " + target + "\n");
-                        LargeDatasetSearch searcher = new LargeDatasetSearch(dataFile.getName(), numElements, elementSize, byteOrder, outputArea);
-
-                        // Output initial space usage
-                        searcher.outputSpaceComplexity();
-
-                        int index = -1;
-
-                        switch (algorithm) {
-                            case "Binary Search":
-                                index = searcher.binarySearch(target);
-                                break;
-                            case "Exponential Search":
-                                index = searcher.exponentialSearch(target);
-                                break;
-                            case "Interpolation Search":
-                                index = searcher.interpolationSearch(target);
-                                break;
-                            case "Hybrid Search":
-                                index = searcher.hybridSearch(target);
-                                break;
-                            default:
-                                JOptionPane.showMessageDialog(frame, "Invalid algorithm selection.", "Error", JOptionPane.ERROR_MESSAGE);
-                                return;
-                        }
+                target = Long.parseLong(input);
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(frame, "Invalid input. Please enter a numeric value.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                        if (index != -1) {
-                            outputArea.append("Found target " + target + " at index: " + index + "\n");
-                        } else {
-                            outputArea.append("Target " + target + " not found.\n");
-                        }
+            // Algorithm selection, starting from the one the file's header recommends
+            String algorithm = (String) JOptionPane.showInputDialog(frame, "Select Search Algorithm:", "Algorithm Selection",
+                    JOptionPane.PLAIN_MESSAGE, null, algorithms, session.getHeader().recommendAlgorithm());
+            if (algorithm != null) {
+                runSearch(session, algorithm, target);
+            }
+        }
+    }
+
+    private void runSearch(LargeDatasetSearch searcher, String algorithm, long target) {
+        output.append("Starting search for target value: " + target + "\n");
+        searcher.setTraceEnabled(traceItem.isSelected());
+        searcher.setCache(cacheItem.isSelected() ? searchCache : null);
+
+        startTask(new BackgroundTask<Long>("Error during search operation.") {
+            @Override
+            Long work() throws IOException {
+                // Output initial space usage
+                searcher.outputSpaceComplexity();
+
+                long index;
+                switch (algorithm) {
+                    case "Binary Search":
+                        index = searcher.binarySearch(target);
+                        break;
+                    case "Exponential Search":
+                        index = searcher.exponentialSearch(target);
+                        break;
+                    case "Interpolation Search":
+                        index = searcher.interpolationSearch(target);
+                        break;
+                    case "Hybrid Search":
+                        index = searcher.hybridSearch(target);
+                        break;
+                    case "Learned Index Search":
+                        index = searcher.learnedIndexSearch(target);
+                        break;
+                    case "Eytzinger Search":
+                        index = searcher.eytzingerSearch(target);
+                        break;
+                    case "Compressed Block Search":
+                        index = searcher.compressedSearch(target);
+                        break;
+                    case "Incremental Search":
+                        index = searcher.incrementalSearch(target);
+                        break;
+                    case "Auto (Adaptive)":
+                        index = searcher.autoSearch(target);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid algorithm selection: " + algorithm);
+                }
+
+                if (index != -1) {
+                    output.append("Found target " + target + " at index: " + index + "\n");
+                } else {
+                    output.append("Target " + target + " not found.\n");
+                }
+
+                // Output space usage after search
+                searcher.outputSpaceComplexity();
+                return index;
+            }
+        }, "Searching", false);
+    }
+
+    // Resolve a large set of random targets in one batch and report throughput
+    private class BatchAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (isBusy() || !checkDataFile()) {
+                return;
+            }
+
+            String input = JOptionPane.showInputDialog(frame, "Enter the number of lookups to run:", "Batch Search", JOptionPane.QUESTION_MESSAGE);
+            if (input == null || input.isEmpty()) {
+                return;
+            }
+            int count;
+            try {
+                count = Integer.parseInt(input);
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(frame, "Invalid input. Please enter a numeric value.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (count <= 0) {
+                JOptionPane.showMessageDialog(frame, "Invalid input. Please enter a positive number.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                        // Output space usage after search
-                        searcher.outputSpaceComplexity();
+            LargeDatasetSearch searcher = session;
+            startTask(new BackgroundTask<Integer>("Error during search operation.") {
+                @Override
+                Integer work() {
+                    // Mirror the generator's distribution so most probes land in the dense range
+                    Random rand = new Random();
+                    long[] targets = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        targets[i] = rand.nextDouble() < 0.7 ? rand.nextInt(1000) : rand.nextInt(Integer.MAX_VALUE);
+                    }
 
-                        searcher.close();
+                    long[] results = searcher.batchSearch(targets, this::updateProgress);
+                    int found = 0;
+                    for (long index : results) {
+                        if (index != -1) {
+                            found++;
+                        }
                     }
+                    return found;
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(frame, "Error during search operation.", "Error", JOptionPane.ERROR_MESSAGE);
+
+                @Override
+                void succeeded(Integer found) {
+                    output.append(String.format("Found %d of %d targets.\n", found, count));
+                }
+            }, "Batch search", true);
+        }
+    }
+
+    // Count and aggregate every value between two bounds
+    private class RangeAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (isBusy() || !checkDataFile()) {
+                return;
+            }
+
+            String lowInput = JOptionPane.showInputDialog(frame, "Enter the lower bound (inclusive):", "Range Query", JOptionPane.QUESTION_MESSAGE);
+            if (lowInput == null || lowInput.isEmpty()) {
+                return;
+            }
+            String highInput = JOptionPane.showInputDialog(frame, "Enter the upper bound (inclusive):", "Range Query", JOptionPane.QUESTION_MESSAGE);
+            if (highInput == null || highInput.isEmpty()) {
+                return;
+            }
+            long low;
+            long high;
+            try {
+                low = Long.parseLong(lowInput);
+                high = Long.parseLong(highInput);
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(frame, "Invalid input. Please enter a numeric value.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            LargeDatasetSearch searcher = session;
+            startTask(new BackgroundTask<Void>("Error during search operation.") {
+                @Override
+                Void work() {
+                    searcher.rangeQuery(low, high);
+                    return null;
+                }
+            }, "Range query", false);
+        }
+    }
+
+    // Add values to the dataset without rewriting the data file; Incremental Search sees them
+    private class InsertAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (isBusy() || !checkDataFile()) {
+                return;
+            }
+
+            String input = JOptionPane.showInputDialog(frame, "Enter the values to insert, separated by commas or spaces:", "Insert Values", JOptionPane.QUESTION_MESSAGE);
+            if (input == null || input.trim().isEmpty()) {
+                return;
+            }
+            String[] parts = input.trim().split("[,\\s]+");
+            long[] values = new long[parts.length];
+            try {
+                for (int i = 0; i < parts.length; i++) {
+                    values[i] = Long.parseLong(parts[i]);
+                }
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(frame, "Invalid input. Please enter numeric values.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+
+            LargeDatasetSearch searcher = session;
+            startTask(new BackgroundTask<Void>("Error inserting values.") {
+                @Override
+                Void work() throws IOException {
+                    searcher.insertValues(values);
+                    return null;
+                }
+            }, "Inserting", false);
         }
     }
 
+    // Opens the current data file as the session every query reuses, releasing the previous one,
+    // then reports the layout read from its header and the algorithm it suggests
+    private void openSession() {
+        String path = dataFile.getPath();
+        boolean preload = preloadItem.isSelected();
+        LargeDatasetSearch previous = session;
+        session = null;
+        startTask(new BackgroundTask<LargeDatasetSearch>("Error reading data file.") {
+            @Override
+            LargeDatasetSearch work() throws IOException {
+                if (previous != null) {
+                    previous.close();
+                }
+                LargeDatasetSearch searcher = new LargeDatasetSearch(path, output);
+                searcher.setMetrics(searchMetrics);
+                if (preload) {
+                    searcher.preload();
+                }
+                return searcher;
+            }
+
+            @Override
+            void cancelled(LargeDatasetSearch searcher) {
+                try {
+                    searcher.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            @Override
+            void succeeded(LargeDatasetSearch searcher) {
+                session = searcher;
+                DataFileHeader header = searcher.getHeader();
+                output.append("Data file: " + header.describe() + "\n");
+                output.append("Recommended algorithm: " + header.recommendAlgorithm() + "\n");
+            }
+        }, "Opening", false);
+    }
+
     // Export the output
     private class ExportAction implements ActionListener {
         @Override
@@ -177,4 +567,26 @@ public class MainApp {
             }
         }
     }
+
+    // Export the per-algorithm metrics as CSV
+    private class ExportMetricsAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setDialogTitle("Save Search Metrics As");
+            fileChooser.setSelectedFile(new File("search-metrics.csv"));
+            int userSelection = fileChooser.showSaveDialog(frame);
+
+            if (userSelection == JFileChooser.APPROVE_OPTION) {
+                File fileToSave = fileChooser.getSelectedFile();
+                try {
+                    Utils.writeToFile(searchMetrics.exportCsv(), fileToSave);
+                    JOptionPane.showMessageDialog(frame, "Search metrics exported successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(frame, "Error exporting search metrics.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Read-only view of a data file of any size. A single MappedByteBuffer is limited to 2 GB, so the
+// file is mapped as consecutive segments of SEGMENT_SIZE bytes and addressed with long indexes.
+// The segment size is a power of two and a multiple of every element width, so no element ever
+// straddles two segments. Reads are absolute and safe to share between threads.
+// Files carrying a DataFileHeader describe their own layout; the mapping starts after the header.
+// close() releases the mappings immediately rather than whenever the buffers are garbage collected.
+// It must only be called once no thread is reading any more: an unmapped segment cannot be read.
+public class MappedDataFile implements AutoCloseable {
+
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // sun.misc.Unsafe.invokeCleaner unmaps a direct buffer on the spot (Java 9 and later). Where it
+    // is missing the mappings are left to the garbage collector, as before.
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    // Vector API kernel for countLessThan (vector/VectorWindowCounter.java). It is only there when
+    // that class was compiled and jdk.incubator.vector added at run time; otherwise the scalar loops
+    // below are used.
+    private static final WindowCounter VECTOR_COUNTER = loadVectorCounter();
+
+    interface WindowCounter {
+        boolean supports(int elementSize);
+
+        int countLessThan(ByteBuffer segment, int offset, int limit, int elementSize, boolean signed,
+                          ByteOrder byteOrder, long target);
+    }
+
+    private static WindowCounter loadVectorCounter() {
+        try {
+            return (WindowCounter) Class.forName("VectorWindowCounter").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static boolean isVectorized() {
+        return VECTOR_COUNTER != null;
+    }
+
+    private final MappedByteBuffer[] segments;
+    private final long numElements;
+    private final int elementSize;
+    private final boolean signed;
+    private final ByteOrder byteOrder;
+    private final long dataOffset;
+    private DataFileHeader header;
+    private boolean closed;
+
+    private MappedDataFile(MappedByteBuffer[] segments, long numElements, int elementSize, boolean signed,
+                           ByteOrder byteOrder, long dataOffset) {
+        this.segments = segments;
+        this.numElements = numElements;
+        this.elementSize = elementSize;
+        this.signed = signed;
+        this.byteOrder = byteOrder;
+        this.dataOffset = dataOffset;
+    }
+
+    // Opens a file using its header, or the legacy layout if it has none
+    public static MappedDataFile open(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            DataFileHeader header = DataFileHeader.read(channel);
+            if (header == null) {
+                MappedDataFile data = map(channel, 0, channel.size() / 4, 4, true, ByteOrder.BIG_ENDIAN);
+                long last = data.numElements - 1;
+                data.header = DataFileHeader.legacy(channel.size(),
+                        last < 0 ? 0 : data.readElement(0), last < 0 ? 0 : data.readElement(last));
+                return data;
+            }
+
+            MappedDataFile data = map(channel, header.getHeaderLength(), header.getNumElements(),
+                    header.getElementSize(), header.isSigned(), header.getByteOrder());
+            data.header = header;
+            return data;
+        }
+    }
+
+    // Opens a headless file with an explicit layout, as GenerateBinaryData wrote them before headers existed
+    public static MappedDataFile open(String filename, long numElements, int elementSize, ByteOrder byteOrder) throws IOException {
+        return open(filename, 0, numElements, elementSize, byteOrder);
+    }
+
+    // Maps elements starting at dataOffset of a file in some other format, such as the block area of
+    // a CompressedDataFile
+    static MappedDataFile open(String filename, long dataOffset, long numElements, int elementSize, ByteOrder byteOrder) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedDataFile data = map(channel, dataOffset, numElements, elementSize, true, byteOrder);
+            long last = numElements - 1;
+            data.header = new DataFileHeader(elementSize, true, byteOrder, numElements,
+                    last < 0 ? 0 : data.readElement(0), last < 0 ? 0 : data.readElement(last), new long[0]);
+            return data;
+        }
+    }
+
+    private static MappedDataFile map(FileChannel channel, long dataOffset, long numElements, int elementSize, boolean signed, ByteOrder byteOrder) throws IOException {
+        if (elementSize != 1 && elementSize != 2 && elementSize != 4 && elementSize != 8) {
+            throw new IllegalArgumentException("Unsupported element size.");
+        }
+
+        long size = channel.size() - dataOffset;
+        if (numElements < 0 || numElements > size / elementSize) {
+            throw new IOException("File holds " + size / elementSize + " elements, expected " + numElements + ".");
+        }
+        size = numElements * elementSize;
+
+        // The mappings stay valid after the channel is closed
+        int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + offset, Math.min(SEGMENT_SIZE, size - offset));
+            segments[i].order(byteOrder);
+        }
+        return new MappedDataFile(segments, numElements, elementSize, signed, byteOrder, dataOffset);
+    }
+
+    public long readElement(long index) {
+        long position = index * elementSize;
+        MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+        int offset = (int) (position & SEGMENT_MASK);
+
+        switch (elementSize) {
+            case 1:
+                return signed ? segment.get(offset) : segment.get(offset) & 0xFF;
+            case 2:
+                return signed ? segment.getShort(offset) : segment.getShort(offset) & 0xFFFF;
+            case 4:
+                return signed ? segment.getInt(offset) : segment.getInt(offset) & 0xFFFFFFFFL;
+            case 8:
+                return segment.getLong(offset); // Unsigned 8-byte values above Long.MAX_VALUE are not supported
+            default:
+                throw new IllegalArgumentException("Unsupported element size.");
+        }
+    }
+
+    // Number of elements in [from, to) whose value is less than target. The width switch and the
+    // segment lookup happen once, leaving a tight loop that adds comparison results instead of
+    // branching on them, so it runs without mispredictions however the values fall. With the vector
+    // kernel loaded, 4- and 8-byte windows are counted a register at a time instead.
+    public int countLessThan(long from, long to, long target) {
+        long start = from * elementSize;
+        long end = to * elementSize;
+        if (start >= end) {
+            return 0;
+        }
+        if ((start >>> SEGMENT_SHIFT) != ((end - 1) >>> SEGMENT_SHIFT)) {
+            // The window straddles two segments; count each side separately
+            long boundary = ((start >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+            long split = boundary / elementSize;
+            return countLessThan(from, split, target) + countLessThan(split, to, target);
+        }
+
+        MappedByteBuffer segment = segments[(int) (start >>> SEGMENT_SHIFT)];
+        int offset = (int) (start & SEGMENT_MASK);
+        int limit = offset + (int) (end - start);
+        if (VECTOR_COUNTER != null && VECTOR_COUNTER.supports(elementSize)) {
+            return VECTOR_COUNTER.countLessThan(segment, offset, limit, elementSize, signed, byteOrder, target);
+        }
+        int count = 0;
+
+        switch (elementSize) {
+            case 1:
+                for (int i = offset; i < limit; i++) {
+                    long value = signed ? segment.get(i) : segment.get(i) & 0xFF;
+                    count += value < target ? 1 : 0;
+                }
+                break;
+            case 2:
+                for (int i = offset; i < limit; i += 2) {
+                    long value = signed ? segment.getShort(i) : segment.getShort(i) & 0xFFFF;
+                    count += value < target ? 1 : 0;
+                }
+                break;
+            case 4:
+                for (int i = offset; i < limit; i += 4) {
+                    long value = signed ? segment.getInt(i) : segment.getInt(i) & 0xFFFFFFFFL;
+                    count += value < target ? 1 : 0;
+                }
+                break;
+            case 8:
+                for (int i = offset; i < limit; i += 8) {
+                    count += segment.getLong(i) < target ? 1 : 0;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported element size.");
+        }
+        return count;
+    }
+
+    // Reads every page of the mapping into memory up front, so the first searches do not fault
+    // them in one probe at a time
+    public void load() {
+        for (MappedByteBuffer segment : segments) {
+            segment.load();
+        }
+    }
+
+    public long getSizeInBytes() {
+        return numElements * elementSize;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = 0; i < segments.length; i++) {
+            MappedByteBuffer segment = segments[i];
+            // Drop the reference first, so a late read fails with an exception instead of touching unmapped memory
+            segments[i] = null;
+            unmap(segment);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer segment) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, segment);
+        } catch (ReflectiveOperationException e) {
+            // Leave the mapping to the garbage collector
+        }
+    }
+
+    public long getNumElements() {
+        return numElements;
+    }
+
+    public int getElementSize() {
+        return elementSize;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    public DataFileHeader getHeader() {
+        return header;
+    }
+
+    // Byte offset of the first element in the file
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+// Read statistics of one query, filled in by the InstrumentedSearchEngines serving it: how many
+// elements were read and how many distinct 4 KB pages of the files they lay on. Pages are what a
+// cold query pays for, so two algorithms with the same probe count can still differ widely here.
+// Not thread-safe; each thread running instrumented queries needs its own instance.
+public class ProbeStats {
+
+    static final int PAGE_SHIFT = 12;
+
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long probes;
+    private long[] pages = new long[INITIAL_CAPACITY]; // Open-addressing set of page keys; EMPTY marks a free slot
+    private int pageCount;
+
+    public ProbeStats() {
+        Arrays.fill(pages, EMPTY);
+    }
+
+    public void reset() {
+        probes = 0;
+        if (pages.length > INITIAL_CAPACITY) {
+            // A scan or index build grew the set; start small again rather than clear it every query
+            pages = new long[INITIAL_CAPACITY];
+            Arrays.fill(pages, EMPTY);
+        } else if (pageCount > 0) {
+            Arrays.fill(pages, EMPTY);
+        }
+        pageCount = 0;
+    }
+
+    // One element read at the given byte offset of a file
+    void recordRead(int file, long byteOffset) {
+        probes++;
+        addPage(file, byteOffset >>> PAGE_SHIFT);
+    }
+
+    // A straight pass over elements bytes [fromByte, toByte) of a file
+    void recordScan(int file, long fromByte, long toByte, long elements) {
+        probes += elements;
+        for (long page = fromByte >>> PAGE_SHIFT; page <= (toByte - 1) >>> PAGE_SHIFT; page++) {
+            addPage(file, page);
+        }
+    }
+
+    private void addPage(int file, long page) {
+        // Files are told apart by the top 16 bits, which a page number never reaches
+        long key = (long) file << 48 | page;
+        int mask = pages.length - 1;
+        int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        while (pages[slot] != EMPTY) {
+            if (pages[slot] == key) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        pages[slot] = key;
+        if (++pageCount * 2 > pages.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] old = pages;
+        pages = new long[old.length * 2];
+        Arrays.fill(pages, EMPTY);
+        int mask = pages.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+                while (pages[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                pages[slot] = key;
+            }
+        }
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getPagesTouched() {
+        return pageCount;
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+// Command-line throughput benchmark against a data file.
+// Usage: java SearchBenchmark [file] [lookups]
+public class SearchBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String filename = args.length > 0 ? args[0] : "data.bin";
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 4000000;
+
+        SearchEngine engine = SearchEngine.open(filename);
+        long[] targets = randomTargets(lookups, new Random(42));
+
+        EytzingerIndex eytzinger = EytzingerIndex.open(engine, filename);
+
+        runAlgorithmComparison(engine, eytzinger, targets);
+        runLayoutLatencyComparison(engine, eytzinger, targets);
+        runFinalStageComparison(engine, new Random(42));
+        runConcurrentBenchmark(engine, targets);
+    }
+
+    // Mirrors the generator's distribution so most probes land in the dense range
+    static long[] randomTargets(int count, Random rand) {
+        long[] targets = new long[count];
+        for (int i = 0; i < count; i++) {
+            targets[i] = rand.nextDouble() < 0.7 ? rand.nextInt(1000) : rand.nextInt(Integer.MAX_VALUE);
+        }
+        return targets;
+    }
+
+    // Single-threaded lookups/second per algorithm. Each run stops after a fixed time budget because
+    // interpolation search degrades towards a linear scan in the dense low range of skewed data.
+    static void runAlgorithmComparison(SearchEngine engine, EytzingerIndex eytzinger, long[] targets) {
+        LearnedIndex learnedIndex = LearnedIndex.build(engine);
+        System.out.printf("Learned index: built in %.2f ms, %d segments, %d bytes (epsilon = %d)%n",
+                learnedIndex.getBuildTimeNanos() / 1_000_000.0, learnedIndex.getSegmentCount(),
+                learnedIndex.getSizeInBytes(), learnedIndex.getEpsilon());
+
+        System.out.printf("%-22s %16s%n", "Algorithm", "Lookups/second");
+        printThroughput("Binary Search", engine::binarySearch, targets);
+        printThroughput("Exponential Search", engine::exponentialSearch, targets);
+        printThroughput("Interpolation Search", engine::interpolationSearch, targets);
+        printThroughput("Hybrid Search", engine::hybridSearch, targets);
+        printThroughput("Learned Index Search", learnedIndex::search, targets);
+        printThroughput("Eytzinger Search", eytzinger::search, targets);
+        printThroughput("Auto (Adaptive)", AdaptiveSearch.build(engine)::search, targets);
+        System.out.println();
+    }
+
+    private static void printThroughput(String name, LongUnaryOperator search, long[] targets) {
+        long budget = 1_000_000_000L;
+
+        // Warm up with the same budget before measuring
+        timeLookups(search, targets, budget);
+        long[] measured = timeLookups(search, targets, budget);
+        System.out.printf("%-22s %16.0f%n", name, measured[0] / (measured[1] / 1_000_000_000.0));
+    }
+
+    // Returns {lookups completed, elapsed nanoseconds}
+    private static long[] timeLookups(LongUnaryOperator search, long[] targets, long budgetNanos) {
+        long checksum = 0;
+        int count = 0;
+        long startTime = System.nanoTime();
+        long elapsed = 0;
+        while (count < targets.length) {
+            checksum += search.applyAsLong(targets[count++]);
+            if ((count & 0xFF) == 0) {
+                elapsed = System.nanoTime() - startTime;
+                if (elapsed > budgetNanos) {
+                    break;
+                }
+            }
+        }
+        elapsed = System.nanoTime() - startTime;
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+        return new long[] {count, elapsed};
+    }
+
+    // Per-lookup latency of binary search over the sorted layout versus the Eytzinger sidecar
+    static void runLayoutLatencyComparison(SearchEngine engine, EytzingerIndex eytzinger, long[] targets) {
+        LatencyHistogram sorted = new LatencyHistogram();
+        LatencyHistogram tree = new LatencyHistogram();
+
+        // Warm up both layouts before measuring
+        recordLatencies(engine::binarySearch, targets, sorted);
+        recordLatencies(eytzinger::search, targets, tree);
+        sorted.reset();
+        tree.reset();
+        recordLatencies(engine::binarySearch, targets, sorted);
+        recordLatencies(eytzinger::search, targets, tree);
+
+        System.out.println("Lookup latency by layout (ns)");
+        System.out.println("Sorted layout:    " + sorted.summary(""));
+        System.out.println("Eytzinger layout: " + tree.summary(""));
+        System.out.println();
+    }
+
+    private static void recordLatencies(LongUnaryOperator search, long[] targets, LatencyHistogram histogram) {
+        long checksum = 0;
+        for (long target : targets) {
+            long startTime = System.nanoTime();
+            checksum += search.applyAsLong(target);
+            histogram.record(System.nanoTime() - startTime);
+        }
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+    }
+
+    // Nanoseconds per lookup inside windows of fixed size, branchy binary search versus the
+    // branch-free final stage, to pick SearchEngine.SCAN_THRESHOLD for this machine and element width
+    static void runFinalStageComparison(SearchEngine engine, Random rand) {
+        long numElements = engine.getNumElements();
+        int lookups = 1 << 20;
+        System.out.println("Final stage over a window (ns/lookup, " + (MappedDataFile.isVectorized() ? "vector" : "scalar") + " count)");
+        System.out.printf("%-8s %12s %12s%n", "Window", "Binary", "Branch-free");
+
+        for (int window = 8; window <= 512 && window <= numElements; window *= 2) {
+            // Windows start at random positions; half the targets are hits, half are misses
+            long[] lefts = new long[lookups];
+            long[] windowTargets = new long[lookups];
+            for (int i = 0; i < lookups; i++) {
+                lefts[i] = (long) (rand.nextDouble() * (numElements - window + 1));
+                long value = engine.readElement(lefts[i] + rand.nextInt(window));
+                windowTargets[i] = rand.nextBoolean() ? value : value + 1;
+            }
+
+            int size = window;
+            double binary = 0;
+            double scan = 0;
+            // The first round warms up both loops and is discarded
+            for (int round = 0; round < 2; round++) {
+                binary = timeWindows((target, left) -> engine.binarySearchWindow(target, left, left + size - 1), windowTargets, lefts);
+                scan = timeWindows((target, left) -> engine.scanWindow(target, left, left + size - 1), windowTargets, lefts);
+            }
+            System.out.printf("%-8d %12.1f %12.1f%n", window, binary, scan);
+        }
+        System.out.println();
+    }
+
+    private static double timeWindows(LongBinaryOperator search, long[] targets, long[] lefts) {
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < targets.length; i++) {
+            checksum += search.applyAsLong(targets[i], lefts[i]);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+        return (double) elapsed / targets.length;
+    }
+
+    // Every thread count shares one mapping; each thread takes an equal slice of the targets
+    static void runConcurrentBenchmark(SearchEngine engine, long[] targets) throws InterruptedException {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        System.out.println("Concurrent binary search throughput (" + targets.length + " lookups)");
+        System.out.printf("%-8s %16s %10s%n", "Threads", "Lookups/second", "Speedup");
+
+        // Warm up so the first measurement is not dominated by JIT compilation and page faults
+        runThreads(engine, targets, maxThreads);
+
+        double baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+            double throughput = runThreads(engine, targets, threads);
+            if (threads == 1) {
+                baseline = throughput;
+            }
+            System.out.printf("%-8d %16.0f %9.2fx%n", threads, throughput, throughput / baseline);
+        }
+    }
+
+    private static int nextThreadCount(int threads, int maxThreads) {
+        if (threads == maxThreads) {
+            return maxThreads + 1;
+        }
+        return Math.min(threads * 2, maxThreads);
+    }
+
+    private static double runThreads(SearchEngine engine, long[] targets, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] checksums = new long[threads];
+        int sliceSize = (targets.length + threads - 1) / threads;
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            int from = Math.min(t * sliceSize, targets.length);
+            int to = Math.min(from + sliceSize, targets.length);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    long checksum = 0;
+                    for (int i = from; i < to; i++) {
+                        checksum += engine.binarySearch(targets[i]);
+                    }
+                    // Keep the results live so the lookups cannot be optimised away
+                    checksums[thread] = checksum;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long endTime = System.nanoTime();
+        executor.shutdown();
+
+        long checksum = 0;
+        for (long value : checksums) {
+            checksum += value;
+        }
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+        return targets.length / ((endTime - startTime) / 1_000_000_000.0);
+    }
+}
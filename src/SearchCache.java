@@ -0,0 +1,149 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+// Bounded cache of target -> position results in front of the search algorithms. Entries live in
+// a set-associative table of primitive arrays (no boxing): a target hashes to one set of WAYS
+// slots and, when the set is full, its least recently used slot is evicted. Misses (-1) are cached
+// too, since hot keys that are absent are just as expensive to look up again.
+// The cache is bound to one data file and clears itself when a different file is opened.
+public class SearchCache {
+
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    private static final int WAYS = 8;
+
+    private final long[] keys;
+    private final long[] values;
+    private final long[] lastUsed; // 0 marks an empty slot
+    private final int setMask;
+    private long clock;
+
+    private String boundFile;
+    private long boundLength;
+    private long boundModified;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public SearchCache(int capacity) {
+        if (capacity < WAYS) {
+            throw new IllegalArgumentException("Capacity must be at least " + WAYS + ".");
+        }
+        int sets = Integer.highestOneBit(capacity / WAYS);
+        this.keys = new long[sets * WAYS];
+        this.values = new long[sets * WAYS];
+        this.lastUsed = new long[sets * WAYS];
+        this.setMask = sets - 1;
+    }
+
+    // Clears the cache if the given file differs from the one it was filled from
+    public synchronized void bind(File dataFile) {
+        String path = dataFile.getAbsolutePath();
+        if (!path.equals(boundFile) || dataFile.length() != boundLength || dataFile.lastModified() != boundModified) {
+            if (boundFile != null) {
+                invalidations++;
+            }
+            clear();
+            boundFile = path;
+            boundLength = dataFile.length();
+            boundModified = dataFile.lastModified();
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(lastUsed, 0);
+    }
+
+    // Returns the cached position, or ABSENT if the target is not cached
+    public synchronized long get(long target) {
+        int base = setIndex(target);
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (lastUsed[slot] != 0 && keys[slot] == target) {
+                lastUsed[slot] = ++clock;
+                hits++;
+                return values[slot];
+            }
+        }
+        misses++;
+        return ABSENT;
+    }
+
+    public synchronized void put(long target, long position) {
+        int base = setIndex(target);
+        int victim = base;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (lastUsed[slot] == 0 || keys[slot] == target) {
+                victim = slot;
+                break;
+            }
+            if (lastUsed[slot] < lastUsed[victim]) {
+                victim = slot;
+            }
+        }
+        if (lastUsed[victim] != 0 && keys[victim] != target) {
+            evictions++;
+        }
+        keys[victim] = target;
+        values[victim] = position;
+        lastUsed[victim] = ++clock;
+    }
+
+    // The search runs outside the lock, so slow lookups do not block other threads' cache hits
+    public long lookup(long target, LongUnaryOperator search) {
+        long position = get(target);
+        if (position == ABSENT) {
+            position = search.applyAsLong(target);
+            put(target, position);
+        }
+        return position;
+    }
+
+    private int setIndex(long target) {
+        // Spread the bits so clustered keys do not pile into a few sets
+        long hash = target * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & setMask) * WAYS;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (long used : lastUsed) {
+            if (used != 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public synchronized String describe() {
+        return String.format("Cache: %d/%d entries, hits = %d, misses = %d, hit rate = %.1f%%, evictions = %d, invalidations = %d",
+                size(), getCapacity(), hits, misses, getHitRate() * 100, evictions, invalidations);
+    }
+}
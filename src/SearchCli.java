@@ -0,0 +1,432 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.LongUnaryOperator;
+import javax.management.JMException;
+
+// Headless search runner for scripts and pipelines. Targets are streamed from a file or stdin
+// (decimal integers separated by whitespace or commas) and each result is written as
+// "target<TAB>position" as soon as it is known, so memory use does not grow with the input.
+// Latency percentiles and throughput go to stderr, keeping stdout free for the results.
+// With --metrics every read is counted as well, and probe and page statistics are written as CSV
+// and published over JMX while the run lasts.
+// --data may also name a file written by CompressedDataFile, which is searched with --algorithm compressed
+// without the raw file it was made from, and a directory written by ShardedDataset, which is searched
+// with --algorithm binary (each lookup routed to its shard) or batch (shards searched in parallel).
+// Usage: java SearchCli --data <file>|<directory> [--algorithm binary|exponential|interpolation|hybrid|learned|eytzinger|compressed|auto|batch]
+//        [--targets <file>|-] [--out <file>|-] [--batch <size>] [--metrics <file>] [--preload] [--no-results]
+public class SearchCli {
+
+    private static final String USAGE = "Usage: java SearchCli --data <file>|<directory> "
+            + "[--algorithm binary|exponential|interpolation|hybrid|learned|eytzinger|compressed|auto|batch] "
+            + "[--targets <file>|-] [--out <file>|-] [--batch <size>] [--metrics <file>] [--preload] [--no-results]";
+
+    private String dataFile;
+    private String algorithm = "binary";
+    private String targetsFile = "-";
+    private String outFile = "-";
+    private int batchSize = 1 << 16;
+    private String metricsFile;
+    private boolean preload;
+    private boolean writeResults = true;
+
+    public static void main(String[] args) {
+        SearchCli cli = new SearchCli();
+        try {
+            cli.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            cli.run();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Error: interrupted.");
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--preload":
+                    preload = true;
+                    continue;
+                case "--no-results":
+                    writeResults = false;
+                    continue;
+                default:
+                    break;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--data":
+                    dataFile = value;
+                    break;
+                case "--algorithm":
+                    algorithm = value.toLowerCase(Locale.ROOT);
+                    break;
+                case "--targets":
+                    targetsFile = value;
+                    break;
+                case "--out":
+                    outFile = value;
+                    break;
+                case "--metrics":
+                    metricsFile = value;
+                    break;
+                case "--batch":
+                    batchSize = Integer.parseInt(value);
+                    if (batchSize <= 0) {
+                        throw new IllegalArgumentException("Batch size must be positive.");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+            }
+        }
+        if (dataFile == null) {
+            throw new IllegalArgumentException("No data file given.");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        if (new File(dataFile).isDirectory()) {
+            runSharded();
+            return;
+        }
+
+        ProbeStats stats = metricsFile == null ? null : new ProbeStats();
+        SearchMetrics metrics = metricsFile == null ? null : new SearchMetrics();
+        if (metrics != null) {
+            try {
+                metrics.register("cli");
+            } catch (JMException e) {
+                System.err.println("Warning: search metrics not published over JMX: " + e.getMessage());
+            }
+        }
+
+        boolean compressedInput = CompressedDataFile.isCompressed(dataFile);
+        if (compressedInput && !algorithm.equals("compressed")) {
+            throw new IllegalArgumentException("A compressed data file can only be searched with --algorithm compressed.");
+        }
+
+        // Exactly one of engine and compressed is opened; the other stays null
+        try (SearchEngine engine = compressedInput ? null
+                     : stats == null ? SearchEngine.open(dataFile) : InstrumentedSearchEngine.open(dataFile, stats);
+             CompressedDataFile compressed = compressedInput ? CompressedDataFile.open(dataFile, stats) : null;
+             InputStream in = targetsFile.equals("-") ? System.in : new FileInputStream(targetsFile);
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     outFile.equals("-") ? System.out : new FileOutputStream(outFile), StandardCharsets.US_ASCII), 1 << 16)) {
+            if (preload && engine != null) {
+                engine.getData().load();
+            } else if (preload) {
+                compressed.load();
+            }
+
+            TargetReader targets = new TargetReader(in);
+            LatencyHistogram latencies = new LatencyHistogram();
+            long[] totals;
+            String name;
+            String unit;
+            if (algorithm.equals("batch")) {
+                name = "Batch Search (" + batchSize + " targets per batch)";
+                unit = "ns per batch";
+                totals = runBatches(name, engine::batchSearch, targets, out, latencies, stats, metrics);
+            } else {
+                name = algorithmName(algorithm);
+                unit = "ns";
+                totals = runLookups(name, open(engine, compressed, algorithm), targets, out, latencies, stats, metrics);
+            }
+            out.flush();
+
+            double seconds = totals[2] / 1_000_000_000.0;
+            System.err.println("Algorithm: " + name);
+            System.err.printf("Queries: %d, found: %d%n", totals[0], totals[1]);
+            System.err.println("Latency (" + unit + "): " + latencies.summary(""));
+            System.err.printf("Throughput: %.0f queries/second%n", seconds == 0 ? 0 : totals[0] / seconds);
+            if (metrics != null) {
+                System.err.print(metrics.describe());
+                Utils.writeToFile(metrics.exportCsv(), new File(metricsFile));
+            }
+        }
+    }
+
+    // Shards are opened as plain engines and searched through the dataset, so only routed point
+    // lookups and the parallel batch sweep are offered, without probe metrics
+    private void runSharded() throws IOException, InterruptedException {
+        if (!algorithm.equals("binary") && !algorithm.equals("batch")) {
+            throw new IllegalArgumentException("A sharded dataset can only be searched with --algorithm binary or batch.");
+        }
+        if (metricsFile != null) {
+            throw new IllegalArgumentException("--metrics is not supported for sharded datasets.");
+        }
+
+        try (ShardedDataset sharded = ShardedDataset.open(dataFile);
+             InputStream in = targetsFile.equals("-") ? System.in : new FileInputStream(targetsFile);
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     outFile.equals("-") ? System.out : new FileOutputStream(outFile), StandardCharsets.US_ASCII), 1 << 16)) {
+            if (preload) {
+                for (int i = 0; i < sharded.getShardCount(); i++) {
+                    sharded.getShard(i).getData().load();
+                }
+            }
+
+            TargetReader targets = new TargetReader(in);
+            LatencyHistogram latencies = new LatencyHistogram();
+            long[] totals;
+            String name;
+            String unit;
+            if (algorithm.equals("batch")) {
+                name = "Sharded Batch Search (" + sharded.getShardCount() + " shards, " + batchSize + " targets per batch)";
+                unit = "ns per batch";
+                totals = runBatches(name, sharded::batchSearch, targets, out, latencies, null, null);
+            } else {
+                name = "Sharded Binary Search (" + sharded.getShardCount() + " shards)";
+                unit = "ns";
+                totals = runLookups(name, sharded::search, targets, out, latencies, null, null);
+            }
+            out.flush();
+
+            double seconds = totals[2] / 1_000_000_000.0;
+            System.err.println("Algorithm: " + name);
+            System.err.printf("Queries: %d, found: %d%n", totals[0], totals[1]);
+            System.err.println("Latency (" + unit + "): " + latencies.summary(""));
+            System.err.printf("Throughput: %.0f queries/second%n", seconds == 0 ? 0 : totals[0] / seconds);
+        }
+    }
+
+    private static String algorithmName(String algorithm) {
+        switch (algorithm) {
+            case "binary":
+                return "Binary Search";
+            case "exponential":
+                return "Exponential Search";
+            case "interpolation":
+                return "Interpolation Search";
+            case "hybrid":
+                return "Hybrid Search";
+            case "learned":
+                return "Learned Index Search";
+            case "eytzinger":
+                return "Eytzinger Search";
+            case "compressed":
+                return "Compressed Block Search";
+            case "auto":
+                return "Auto (Adaptive)";
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+    }
+
+    private LongUnaryOperator open(SearchEngine engine, CompressedDataFile compressed, String algorithm) throws IOException {
+        switch (algorithm) {
+            case "binary":
+                return engine::binarySearch;
+            case "exponential":
+                return engine::exponentialSearch;
+            case "interpolation":
+                return engine::interpolationSearch;
+            case "hybrid":
+                return engine::hybridSearch;
+            case "learned":
+                return LearnedIndex.build(engine)::search;
+            case "eytzinger":
+                return EytzingerIndex.open(engine, dataFile)::search;
+            case "compressed":
+                return (compressed != null ? compressed : CompressedDataFile.open(engine, dataFile))::search;
+            case "auto":
+                return AdaptiveSearch.build(engine)::search;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+    }
+
+    // Returns {queries, found, elapsed nanoseconds spent searching}
+    private long[] runLookups(String name, LongUnaryOperator search, TargetReader targets, Writer out,
+                              LatencyHistogram latencies, ProbeStats stats, SearchMetrics metrics) throws IOException {
+        long queries = 0;
+        long found = 0;
+        long elapsed = 0;
+        while (targets.next()) {
+            long target = targets.value();
+            if (stats != null) {
+                stats.reset();
+            }
+            long startTime = System.nanoTime();
+            long position = search.applyAsLong(target);
+            long duration = System.nanoTime() - startTime;
+
+            latencies.record(duration);
+            if (metrics != null) {
+                metrics.record(name, duration, stats.getProbes(), stats.getPagesTouched(), position >= 0);
+            }
+            elapsed += duration;
+            queries++;
+            if (position >= 0) {
+                found++;
+            }
+            if (writeResults) {
+                writeResult(out, target, position);
+            }
+        }
+        return new long[] {queries, found, elapsed};
+    }
+
+    // Reads up to batchSize targets at a time and resolves each group with the sorted batch sweep.
+    // Metrics are recorded per batch here, as one sweep serves all of its targets together.
+    private long[] runBatches(String name, BatchSearch search, TargetReader targets, Writer out,
+                              LatencyHistogram latencies, ProbeStats stats, SearchMetrics metrics)
+            throws IOException, InterruptedException {
+        long[] batch = new long[batchSize];
+        long queries = 0;
+        long found = 0;
+        long elapsed = 0;
+        while (true) {
+            int count = 0;
+            while (count < batchSize && targets.next()) {
+                batch[count++] = targets.value();
+            }
+            if (count == 0) {
+                break;
+            }
+
+            long[] lookup = count == batchSize ? batch : Arrays.copyOf(batch, count);
+            if (stats != null) {
+                stats.reset();
+            }
+            long startTime = System.nanoTime();
+            long[] positions = search.apply(lookup);
+            long duration = System.nanoTime() - startTime;
+
+            latencies.record(duration);
+            elapsed += duration;
+            queries += count;
+            long foundBefore = found;
+            for (int i = 0; i < count; i++) {
+                if (positions[i] >= 0) {
+                    found++;
+                }
+                if (writeResults) {
+                    writeResult(out, lookup[i], positions[i]);
+                }
+            }
+            if (metrics != null) {
+                // A batch counts as a hit when any of its targets was found
+                metrics.record(name, duration, stats.getProbes(), stats.getPagesTouched(), found > foundBefore);
+            }
+        }
+        return new long[] {queries, found, elapsed};
+    }
+
+    private static void writeResult(Writer out, long target, long position) throws IOException {
+        out.write(Long.toString(target));
+        out.write('\t');
+        out.write(Long.toString(position));
+        out.write('\n');
+    }
+
+    // A batch lookup over one engine or across the shards of a dataset
+    private interface BatchSearch {
+        long[] apply(long[] targets) throws InterruptedException;
+    }
+
+    // Parses decimal integers straight from the byte stream, without a String per line.
+    // Anything other than digits, a leading minus sign or the separators is rejected, as is a
+    // value outside the long range.
+    static class TargetReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        private long value;
+        private long offset;
+
+        TargetReader(InputStream in) {
+            this.in = in;
+        }
+
+        // Advances to the next target; returns false at the end of the input
+        boolean next() throws IOException {
+            int b = read();
+            while (isSeparator(b)) {
+                b = read();
+            }
+            if (b < 0) {
+                return false;
+            }
+
+            long start = offset - 1;
+            boolean negative = b == '-';
+            if (negative) {
+                b = read();
+            }
+            if (b < '0' || b > '9') {
+                throw invalid(b);
+            }
+            // Accumulated as a negative number, so Long.MIN_VALUE can be read as well
+            long result = 0;
+            while (b >= '0' && b <= '9') {
+                if (result < (Long.MIN_VALUE + (b - '0')) / 10) {
+                    throw new IllegalArgumentException("Target at byte " + start + " of the input is out of range.");
+                }
+                result = result * 10 - (b - '0');
+                b = read();
+            }
+            if (b >= 0 && !isSeparator(b)) {
+                throw invalid(b);
+            }
+            if (!negative && result == Long.MIN_VALUE) {
+                throw new IllegalArgumentException("Target at byte " + start + " of the input is out of range.");
+            }
+            value = negative ? result : -result;
+            return true;
+        }
+
+        long value() {
+            return value;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            offset++;
+            return buffer[position++] & 0xFF;
+        }
+
+        private static boolean isSeparator(int b) {
+            return b == ' ' || b == ',' || b == '\t' || b == '\r' || b == '\n';
+        }
+
+        private IllegalArgumentException invalid(int b) {
+            if (b < 0) {
+                return new IllegalArgumentException("Invalid target at the end of the input.");
+            }
+            return new IllegalArgumentException(String.format(
+                    "Invalid target at byte %d of the input: unexpected byte 0x%02X.", offset - 1, b));
+        }
+    }
+}
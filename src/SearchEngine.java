@@ -0,0 +1,456 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+// Headless search core over a mapped data file. No Swing dependency and no allocation per lookup;
+// pass a SearchListener to any method to receive a step-by-step trace.
+// Positions are long so files beyond 2 GB work with every algorithm, and elements are read with
+// absolute gets, so one engine can serve lookups from any number of threads at once.
+public class SearchEngine implements AutoCloseable {
+
+    // Windows of at most this many elements are finished without branches (see scanWindow). Above
+    // it the loads usually miss the cache, and a branchy search that speculates past them is faster.
+    static final int SCAN_THRESHOLD = 32;
+    static final int SCAN_WIDTH = 16;
+
+    private final MappedDataFile data;
+    private final long numElements;
+    private final long minValue;
+    private final long maxValue;
+
+    public SearchEngine(MappedDataFile data) {
+        this.data = data;
+        this.numElements = data.getNumElements();
+        this.minValue = data.getHeader().getMinValue();
+        this.maxValue = data.getHeader().getMaxValue();
+    }
+
+    // Map the whole file read-only, in as many segments as its size needs, using its header
+    public static SearchEngine open(String filename) throws IOException {
+        return new SearchEngine(MappedDataFile.open(filename));
+    }
+
+    // Map a headerless file with an explicit layout
+    public static SearchEngine open(String filename, long numElements, int elementSize, ByteOrder byteOrder) throws IOException {
+        return new SearchEngine(MappedDataFile.open(filename, numElements, elementSize, byteOrder));
+    }
+
+    public MappedDataFile getData() {
+        return data;
+    }
+
+    // Releases the mapping; see MappedDataFile.close()
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    public long getNumElements() {
+        return numElements;
+    }
+
+    public int getElementSize() {
+        return data.getElementSize();
+    }
+
+    // Targets outside [min, max] from the header are rejected without touching the file
+    public boolean inBounds(long target) {
+        return numElements > 0 && target >= minValue && target <= maxValue;
+    }
+
+    public long readElement(long index) {
+        return data.readElement(index);
+    }
+
+    public long binarySearch(long target) {
+        return binarySearch(target, null);
+    }
+
+    public long binarySearch(long target, SearchListener listener) {
+        if (!inBounds(target)) {
+            return -1;
+        }
+        return binarySearchInRange(target, 0, numElements - 1, listener);
+    }
+
+    public long exponentialSearch(long target) {
+        return exponentialSearch(target, null);
+    }
+
+    public long exponentialSearch(long target, SearchListener listener) {
+        if (!inBounds(target)) {
+            return -1;
+        }
+        if (readElement(0) == target) {
+            if (listener != null) {
+                listener.found(0);
+            }
+            return 0;
+        }
+
+        long range = 1;
+        while (range < numElements && readElement(range) <= target) {
+            if (listener != null) {
+                listener.rangeExpanded(range);
+            }
+            range *= 2;
+        }
+
+        long left = range / 2;
+        long right = Math.min(range, numElements - 1);
+        if (listener != null) {
+            listener.rangeNarrowed(left, right);
+        }
+
+        return binarySearchInRange(target, left, right, listener);
+    }
+
+    public long interpolationSearch(long target) {
+        return interpolationSearch(target, null);
+    }
+
+    public long interpolationSearch(long target, SearchListener listener) {
+        if (!inBounds(target)) {
+            return -1;
+        }
+        return interpolationSearchInRange(target, 0, numElements - 1, listener);
+    }
+
+    public long hybridSearch(long target) {
+        return hybridSearch(target, null);
+    }
+
+    public long hybridSearch(long target, SearchListener listener) {
+        if (!inBounds(target)) {
+            return -1;
+        }
+
+        // Step 1: Exponential Search to narrow the range
+        if (readElement(0) == target) {
+            if (listener != null) {
+                listener.found(0);
+            }
+            return 0;
+        }
+
+        long range = 1;
+        while (range < numElements && readElement(range) < target) {
+            if (listener != null) {
+                listener.rangeExpanded(range);
+            }
+            range *= 2;
+        }
+
+        long left = range / 2;
+        long right = Math.min(range, numElements - 1);
+        if (listener != null) {
+            listener.rangeNarrowed(left, right);
+        }
+
+        // Step 2: Interpolation Search within the range, Step 3: Binary Search fallback
+        return interpolationSearchInRange(target, left, right, listener);
+    }
+
+    // Interpolates until the window stops shrinking predictably, then finishes with binary search
+    long interpolationSearchInRange(long target, long left, long right, SearchListener listener) {
+        while (left <= right) {
+            long leftVal = readElement(left);
+            long rightVal = readElement(right);
+            if (target < leftVal || target > rightVal) {
+                return -1;
+            }
+
+            if (left == right || rightVal == leftVal) {
+                // Every element in the window holds the same value
+                if (leftVal == target) {
+                    if (listener != null) {
+                        listener.found(left);
+                    }
+                    return left;
+                }
+                return -1;
+            }
+
+            // Estimate the position
+            long pos = left + (long) ((double) (right - left) / ((double) rightVal - leftVal) * ((double) target - leftVal));
+
+            // Ensure pos is within array bounds
+            if (pos < left || pos > right) {
+                break;
+            }
+
+            long posValue = readElement(pos);
+            if (listener != null) {
+                listener.estimate(pos, posValue);
+            }
+
+            if (posValue == target) {
+                if (listener != null) {
+                    listener.found(pos);
+                }
+                return pos;
+            } else if (posValue < target) {
+                left = pos + 1;
+                if (listener != null) {
+                    listener.movedLeft(pos, left);
+                }
+            } else {
+                right = pos - 1;
+                if (listener != null) {
+                    listener.movedRight(pos, right);
+                }
+            }
+        }
+
+        if (listener != null) {
+            listener.phase("Switching to Binary Search.");
+        }
+        return binarySearchInRange(target, left, right, listener);
+    }
+
+    long binarySearchInRange(long target, long left, long right, SearchListener listener) {
+        if (listener == null) {
+            // Silent lookups halve the window until it is small, then scan what is left
+            while (right - left >= SCAN_THRESHOLD) {
+                long mid = left + (right - left) / 2;
+                long midValue = readElement(mid);
+                if (midValue == target) {
+                    return mid;
+                } else if (midValue < target) {
+                    left = mid + 1;
+                } else {
+                    right = mid - 1;
+                }
+            }
+            return scanWindow(target, left, right);
+        }
+
+        // Traced lookups keep the classic step-by-step binary search
+        while (left <= right) {
+            long mid = left + (right - left) / 2;
+            long midValue = readElement(mid);
+            if (listener != null) {
+                listener.probe(mid, midValue);
+            }
+
+            if (midValue == target) {
+                if (listener != null) {
+                    listener.found(mid);
+                }
+                return mid;
+            } else if (midValue < target) {
+                left = mid + 1;
+                if (listener != null) {
+                    listener.movedLeft(mid, left);
+                }
+            } else {
+                right = mid - 1;
+                if (listener != null) {
+                    listener.movedRight(mid, right);
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Final stage over [left, right]. Each step picks the next window with a conditional move on
+    // the comparison instead of a branch, so no step can be mispredicted; the last SCAN_WIDTH
+    // elements are counted in one straight pass. The lower bound of target is always within
+    // [base, base + length], so counting the smaller elements there yields it exactly.
+    long scanWindow(long target, long left, long right) {
+        if (left > right) {
+            return -1;
+        }
+        long base = left;
+        long length = right - left + 1;
+        while (length > SCAN_WIDTH) {
+            long half = length >>> 1;
+            base = readElement(base + half - 1) < target ? base + half : base;
+            length -= half;
+        }
+        long position = base + countLessThan(base, base + length, target);
+        return position <= right && readElement(position) == target ? position : -1;
+    }
+
+    // Elements in [from, to) below target. Besides readElement this is the only way the algorithms
+    // read the file, so an instrumented engine overrides the two of them.
+    long countLessThan(long from, long to, long target) {
+        return data.countLessThan(from, to, target);
+    }
+
+    // Plain branchy binary search over [left, right], kept for comparison with scanWindow
+    long binarySearchWindow(long target, long left, long right) {
+        while (left <= right) {
+            long mid = left + (right - left) / 2;
+            long midValue = readElement(mid);
+            if (midValue == target) {
+                return mid;
+            } else if (midValue < target) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    public long[] batchSearch(long[] targets) {
+        // Sort a copy of the probes so the sweep only ever moves forward through the file
+        long[] sorted = targets.clone();
+        Arrays.sort(sorted);
+
+        long[] sortedResults = new long[sorted.length];
+        long left = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                sortedResults[i] = sortedResults[i - 1];
+                continue;
+            }
+
+            // Every element before the previous lower bound is smaller than this probe
+            left = gallopLowerBound(sorted[i], left);
+            sortedResults[i] = (left < numElements && readElement(left) == sorted[i]) ? left : -1;
+        }
+
+        // Map the results back to the caller's probe order
+        long[] results = new long[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            results[i] = sortedResults[Arrays.binarySearch(sorted, targets[i])];
+        }
+        return results;
+    }
+
+    // Returns the first index >= from whose value is not less than target
+    private long gallopLowerBound(long target, long from) {
+        long lo = from;
+        long hi = from;
+        long step = 1;
+
+        // Double the step until we pass the target, starting from the previous probe's position
+        while (hi < numElements && readElement(hi) < target) {
+            lo = hi + 1;
+            hi = Math.min(lo + step, numElements);
+            step <<= 1;
+        }
+
+        return lowerBoundInRange(target, lo, hi);
+    }
+
+    // First index whose value is >= target, or numElements if there is none
+    public long lowerBound(long target) {
+        return lowerBoundInRange(target, 0, numElements);
+    }
+
+    // First index whose value is > target, or numElements if there is none
+    public long upperBound(long target) {
+        if (target == Long.MAX_VALUE) {
+            return numElements;
+        }
+        return lowerBoundInRange(target + 1, 0, numElements);
+    }
+
+    // Number of elements with low <= value <= high, duplicates included
+    public long count(long low, long high) {
+        if (low > high) {
+            return 0;
+        }
+        return upperBound(high) - lowerBound(low);
+    }
+
+    // Searches [lo, hi) and returns the first index whose value is >= target, or hi
+    long lowerBoundInRange(long target, long lo, long hi) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (readElement(mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Passes every value in [low, high] to the consumer in file order and returns how many there were
+    public long scan(long low, long high, LongConsumer consumer) {
+        if (low > high) {
+            return 0;
+        }
+        long from = lowerBound(low);
+        long to = upperBound(high);
+        for (long i = from; i < to; i++) {
+            consumer.accept(readElement(i));
+        }
+        return to - from;
+    }
+
+    // Streams every value in [low, high] straight from the mapping. The stream splits into index
+    // chunks, so parallel aggregations read disjoint parts of the file without boxing any value.
+    public LongStream range(long low, long high) {
+        if (low > high) {
+            return LongStream.empty();
+        }
+        return StreamSupport.longStream(new RangeSpliterator(lowerBound(low), upperBound(high)), false);
+    }
+
+    private class RangeSpliterator extends Spliterators.AbstractLongSpliterator {
+
+        // Below this many elements a chunk is not worth handing to another thread
+        private static final long MIN_CHUNK = 1 << 14;
+
+        private long index;
+        private final long end;
+
+        RangeSpliterator(long index, long end) {
+            super(end - index, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL
+                    | Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.SUBSIZED);
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(readElement(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long i = index;
+            index = end;
+            for (; i < end; i++) {
+                action.accept(readElement(i));
+            }
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long remaining = end - index;
+            if (remaining < 2 * MIN_CHUNK) {
+                return null;
+            }
+            long mid = index + remaining / 2;
+            RangeSpliterator prefix = new RangeSpliterator(index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null; // Natural order
+        }
+    }
+}
@@ -0,0 +1,27 @@
+// Receives step-by-step events from SearchEngine. Only plugged in when a trace is requested,
+// so the search core stays silent and allocation-free otherwise.
+public interface SearchListener {
+
+    // An element was read while searching
+    void probe(long index, long value);
+
+    // An element was read at an interpolated position
+    void estimate(long index, long value);
+
+    // The target is greater than the probed value, so the left bound moved past it
+    void movedLeft(long index, long newLeft);
+
+    // The target is less than the probed value, so the right bound moved before it
+    void movedRight(long index, long newRight);
+
+    // The exponential phase doubled its range
+    void rangeExpanded(long range);
+
+    // The search window was narrowed to [left, right]
+    void rangeNarrowed(long left, long right);
+
+    // The search switched to another strategy
+    void phase(String description);
+
+    void found(long index);
+}
@@ -0,0 +1,197 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Per-algorithm query metrics: latency, probes and distinct pages touched, each kept in a
+// LatencyHistogram so percentiles come out of a fixed amount of memory however many queries run.
+// Registered as an MXBean the figures can be watched live over JMX; exportCsv() writes them out
+// for comparing algorithms on real data.
+public class SearchMetrics implements SearchMetricsMXBean {
+
+    public static final String DOMAIN = "BinarySearchOptimization";
+
+    private final Map<String, AlgorithmMetrics> algorithms = new LinkedHashMap<>();
+    private ObjectName registeredName;
+
+    // Publishes the metrics on the platform MBean server under DOMAIN:type=SearchMetrics,name=<name>,
+    // replacing an earlier registration under the same name
+    public synchronized void register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name=" + ObjectName.quote(name));
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    public synchronized void record(String algorithm, long latencyNanos, long probes, long pages, boolean found) {
+        AlgorithmMetrics metrics = algorithms.computeIfAbsent(algorithm, name -> new AlgorithmMetrics());
+        metrics.latency.record(latencyNanos);
+        metrics.probes.record(probes);
+        metrics.pages.record(pages);
+        if (found) {
+            metrics.hits++;
+        }
+    }
+
+    @Override
+    public synchronized long getTotalQueries() {
+        long total = 0;
+        for (AlgorithmMetrics metrics : algorithms.values()) {
+            total += metrics.latency.getTotalCount();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String[] getAlgorithmNames() {
+        return algorithms.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized AlgorithmStatistics[] getAlgorithmStatistics() {
+        AlgorithmStatistics[] statistics = new AlgorithmStatistics[algorithms.size()];
+        int i = 0;
+        for (Map.Entry<String, AlgorithmMetrics> entry : algorithms.entrySet()) {
+            statistics[i++] = new AlgorithmStatistics(entry.getKey(), entry.getValue());
+        }
+        return statistics;
+    }
+
+    @Override
+    public synchronized String exportCsv() {
+        StringBuilder csv = new StringBuilder("algorithm,queries,hits,latencyP50Nanos,latencyP99Nanos,latencyMaxNanos,"
+                + "latencyMeanNanos,probesMean,probesP99,probesMax,pagesMean,pagesP99,pagesMax\n");
+        for (AlgorithmStatistics s : getAlgorithmStatistics()) {
+            csv.append(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%.1f,%.2f,%d,%d,%.2f,%d,%d\n",
+                    s.getAlgorithm(), s.getQueries(), s.getHits(), s.getLatencyP50Nanos(), s.getLatencyP99Nanos(),
+                    s.getLatencyMaxNanos(), s.getLatencyMeanNanos(), s.getProbesMean(), s.getProbesP99(), s.getProbesMax(),
+                    s.getPagesMean(), s.getPagesP99(), s.getPagesMax()));
+        }
+        return csv.toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        algorithms.clear();
+    }
+
+    public synchronized String describe() {
+        if (algorithms.isEmpty()) {
+            return "Search metrics: no queries recorded yet";
+        }
+        StringBuilder text = new StringBuilder("Search metrics:\n");
+        for (AlgorithmStatistics s : getAlgorithmStatistics()) {
+            text.append(String.format("%s: %d queries (%d found), latency p50 = %d ns, p99 = %d ns, max = %d ns, "
+                            + "probes mean = %.1f (p99 = %d), pages mean = %.1f (p99 = %d)\n",
+                    s.getAlgorithm(), s.getQueries(), s.getHits(), s.getLatencyP50Nanos(), s.getLatencyP99Nanos(),
+                    s.getLatencyMaxNanos(), s.getProbesMean(), s.getProbesP99(), s.getPagesMean(), s.getPagesP99()));
+        }
+        return text.toString();
+    }
+
+    private static class AlgorithmMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram probes = new LatencyHistogram();
+        final LatencyHistogram pages = new LatencyHistogram();
+        long hits;
+    }
+
+    // Point-in-time copy of one algorithm's figures; JMX clients see it as composite data
+    public static class AlgorithmStatistics {
+
+        private final String algorithm;
+        private final long queries;
+        private final long hits;
+        private final long latencyP50Nanos;
+        private final long latencyP99Nanos;
+        private final long latencyMaxNanos;
+        private final double latencyMeanNanos;
+        private final double probesMean;
+        private final long probesP99;
+        private final long probesMax;
+        private final double pagesMean;
+        private final long pagesP99;
+        private final long pagesMax;
+
+        AlgorithmStatistics(String algorithm, AlgorithmMetrics metrics) {
+            this.algorithm = algorithm;
+            this.queries = metrics.latency.getTotalCount();
+            this.hits = metrics.hits;
+            this.latencyP50Nanos = metrics.latency.getValueAtPercentile(50);
+            this.latencyP99Nanos = metrics.latency.getValueAtPercentile(99);
+            this.latencyMaxNanos = metrics.latency.getMaxValue();
+            this.latencyMeanNanos = metrics.latency.getMean();
+            this.probesMean = metrics.probes.getMean();
+            this.probesP99 = metrics.probes.getValueAtPercentile(99);
+            this.probesMax = metrics.probes.getMaxValue();
+            this.pagesMean = metrics.pages.getMean();
+            this.pagesP99 = metrics.pages.getValueAtPercentile(99);
+            this.pagesMax = metrics.pages.getMaxValue();
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public long getQueries() {
+            return queries;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getLatencyP50Nanos() {
+            return latencyP50Nanos;
+        }
+
+        public long getLatencyP99Nanos() {
+            return latencyP99Nanos;
+        }
+
+        public long getLatencyMaxNanos() {
+            return latencyMaxNanos;
+        }
+
+        public double getLatencyMeanNanos() {
+            return latencyMeanNanos;
+        }
+
+        public double getProbesMean() {
+            return probesMean;
+        }
+
+        public long getProbesP99() {
+            return probesP99;
+        }
+
+        public long getProbesMax() {
+            return probesMax;
+        }
+
+        public double getPagesMean() {
+            return pagesMean;
+        }
+
+        public long getPagesP99() {
+            return pagesP99;
+        }
+
+        public long getPagesMax() {
+            return pagesMax;
+        }
+    }
+}
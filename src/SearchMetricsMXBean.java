@@ -0,0 +1,13 @@
+// Management interface of SearchMetrics, as shown by JConsole, VisualVM or any JMX client
+public interface SearchMetricsMXBean {
+
+    long getTotalQueries();
+
+    String[] getAlgorithmNames();
+
+    SearchMetrics.AlgorithmStatistics[] getAlgorithmStatistics();
+
+    String exportCsv();
+
+    void reset();
+}
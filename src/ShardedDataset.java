@@ -0,0 +1,385 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// A dataset range-partitioned over a directory of sorted data files (shards). A small text
+// manifest lists each shard with its first key, last key and element count; the ranges never
+// overlap, so all copies of a value are always in one shard. The key ranges are kept on the heap:
+// a point lookup is routed to its one shard without touching any other, while batches, counts and
+// range aggregates fan out across the shards on an executor and their results are merged.
+// Positions are global: a shard's positions follow on from those of the shards before it.
+// Usage: java ShardedDataset split <data file> <directory> <shards>
+//        java ShardedDataset index <directory>
+public class ShardedDataset implements AutoCloseable {
+
+    public static final String MANIFEST_NAME = "shards.manifest";
+
+    // A shard's share of a batch is searched in slices of this many targets, so one busy shard
+    // still keeps several threads working
+    private static final int BATCH_SLICE = 1 << 16;
+
+    private final SearchEngine[] shards;
+    private final String[] names;
+    private final long[] firstKeys;
+    private final long[] lastKeys;
+    private final long[] offsets; // Global position of each shard's first element
+    private final long numElements;
+    private final ExecutorService executor;
+
+    private ShardedDataset(SearchEngine[] shards, String[] names, ExecutorService executor) {
+        this.shards = shards;
+        this.names = names;
+        this.executor = executor;
+        this.firstKeys = new long[shards.length];
+        this.lastKeys = new long[shards.length];
+        this.offsets = new long[shards.length];
+        long total = 0;
+        for (int i = 0; i < shards.length; i++) {
+            firstKeys[i] = shards[i].getData().getHeader().getMinValue();
+            lastKeys[i] = shards[i].getData().getHeader().getMaxValue();
+            offsets[i] = total;
+            total += shards[i].getNumElements();
+        }
+        this.numElements = total;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4 && args[0].equals("split")) {
+            split(args[1], args[2], Integer.parseInt(args[3]));
+        } else if (args.length == 2 && args[0].equals("index")) {
+            writeManifest(args[1]);
+        } else {
+            System.err.println("Usage: java ShardedDataset split <data file> <directory> <shards>");
+            System.err.println("       java ShardedDataset index <directory>");
+            System.exit(1);
+        }
+        try (ShardedDataset dataset = open(args[args.length == 4 ? 2 : 1])) {
+            System.out.println(dataset.describe());
+        }
+    }
+
+    // Fans out on the common fork-join pool
+    public static ShardedDataset open(String directory) throws IOException {
+        return open(directory, ForkJoinPool.commonPool());
+    }
+
+    // Accepts any executor, e.g. one backed by virtual threads on runtimes that provide them. The
+    // executor stays owned by the caller.
+    public static ShardedDataset open(String directory, ExecutorService executor) throws IOException {
+        File manifest = new File(directory, MANIFEST_NAME);
+        List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        List<SearchEngine> shards = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try {
+            for (String line : lines) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 4) {
+                    throw new IOException("Invalid manifest line: " + line);
+                }
+                long[] values = new long[3];
+                try {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = Long.parseLong(fields[i + 1]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid manifest line: " + line);
+                }
+                SearchEngine shard = SearchEngine.open(new File(directory, fields[0]).getPath());
+                shards.add(shard);
+                names.add(fields[0]);
+
+                // A shard rewritten after the manifest was made would route lookups to the wrong place
+                DataFileHeader header = shard.getData().getHeader();
+                if (header.getMinValue() != values[0] || header.getMaxValue() != values[1] || header.getNumElements() != values[2]) {
+                    throw new IOException("Shard " + fields[0] + " does not match the manifest; rebuild it with ShardedDataset index.");
+                }
+                if (shards.size() > 1 && shards.get(shards.size() - 2).getData().getHeader().getMaxValue() >= header.getMinValue()) {
+                    throw new IOException("Shard " + fields[0] + " overlaps the shard before it.");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (SearchEngine shard : shards) {
+                shard.close();
+            }
+            throw e;
+        }
+        return new ShardedDataset(shards.toArray(new SearchEngine[0]), names.toArray(new String[0]), executor);
+    }
+
+    // Splits a sorted data file into shards of about equal size. Each cut is moved back to the first
+    // copy of the value it falls on, so duplicates never straddle two shards; a value with more
+    // copies than a shard holds leaves that shard out. Shards are copied with transferTo and keep
+    // the source's element layout, with a header of their own. Shards of an earlier split into the
+    // same directory are removed first, and the manifest lists only the shards written here.
+    public static void split(String dataFile, String directory, int shardCount) throws IOException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        File parent = new File(dataFile).getAbsoluteFile().getParentFile();
+        if (parent != null && parent.getCanonicalFile().equals(new File(directory).getCanonicalFile())) {
+            throw new IllegalArgumentException("The shard directory must not contain the data file being split.");
+        }
+        new File(directory).mkdirs();
+        File[] previous = new File(directory).listFiles((dir, name) -> name.matches("shard-\\d{5}\\.bin"));
+        for (File file : previous == null ? new File[0] : previous) {
+            Files.deleteIfExists(file.toPath());
+        }
+
+        try (SearchEngine source = SearchEngine.open(dataFile);
+             RandomAccessFile in = new RandomAccessFile(dataFile, "r");
+             FileChannel inChannel = in.getChannel()) {
+            long n = source.getNumElements();
+            List<Long> cuts = new ArrayList<>();
+            cuts.add(0L);
+            for (int i = 1; i < shardCount; i++) {
+                long nominal = (long) ((double) n * i / shardCount);
+                long cut = nominal < n ? source.lowerBound(source.readElement(nominal)) : n;
+                if (cut > cuts.get(cuts.size() - 1)) {
+                    cuts.add(cut);
+                }
+            }
+            cuts.add(n);
+
+            MappedDataFile data = source.getData();
+            int elementSize = data.getElementSize();
+            List<File> written = new ArrayList<>();
+            for (int i = 0; i + 1 < cuts.size(); i++) {
+                long from = cuts.get(i);
+                long to = cuts.get(i + 1);
+                if (from == to) {
+                    continue;
+                }
+                long[] quantiles = new long[DataFileHeader.DEFAULT_QUANTILES];
+                for (int q = 0; q < quantiles.length; q++) {
+                    quantiles[q] = source.readElement(from + DataFileHeader.quantileIndex(q, quantiles.length, to - from));
+                }
+                DataFileHeader header = new DataFileHeader(elementSize, data.isSigned(), data.getByteOrder(), to - from,
+                        source.readElement(from), source.readElement(to - 1), quantiles);
+
+                File shard = new File(directory, String.format("shard-%05d.bin", i));
+                written.add(shard);
+                try (RandomAccessFile out = new RandomAccessFile(shard, "rw");
+                     FileChannel outChannel = out.getChannel()) {
+                    outChannel.truncate(0);
+                    DataFileIO.writeFully(header.toByteBuffer(), outChannel);
+                    long position = data.getDataOffset() + from * elementSize;
+                    long end = data.getDataOffset() + to * elementSize;
+                    while (position < end) {
+                        position += inChannel.transferTo(position, end - position, outChannel);
+                    }
+                }
+            }
+            writeManifest(directory, written.toArray(new File[0]));
+        }
+    }
+
+    // Writes the manifest for the data files already in a directory, ordered by key range. Fails if
+    // two shards' ranges overlap, as lookups could then not be routed to a single shard.
+    public static void writeManifest(String directory) throws IOException {
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".bin"));
+        if (files == null) {
+            throw new IOException(directory + " is not a directory.");
+        }
+        writeManifest(directory, files);
+    }
+
+    private static void writeManifest(String directory, File[] files) throws IOException {
+        List<String[]> entries = new ArrayList<>();
+        for (File file : files) {
+            DataFileHeader header;
+            try (MappedDataFile data = MappedDataFile.open(file.getPath())) {
+                header = data.getHeader();
+            }
+            if (header.getNumElements() > 0) {
+                entries.add(new String[] {file.getName(), Long.toString(header.getMinValue()),
+                        Long.toString(header.getMaxValue()), Long.toString(header.getNumElements())});
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> Long.parseLong(entry[1])));
+
+        StringBuilder manifest = new StringBuilder("# file,first key,last key,elements\n");
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = entries.get(i);
+            if (i > 0 && Long.parseLong(entries.get(i - 1)[2]) >= Long.parseLong(entry[1])) {
+                throw new IOException("Shards " + entries.get(i - 1)[0] + " and " + entry[0] + " overlap.");
+            }
+            manifest.append(String.join(",", entry)).append('\n');
+        }
+        Utils.writeToFile(manifest.toString(), new File(directory, MANIFEST_NAME));
+    }
+
+    // Index of the shard whose key range holds target, or -1 if it falls outside or between them
+    public int shardFor(long target) {
+        int lo = 0;
+        int hi = firstKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstKeys[mid] <= target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int shard = lo - 1;
+        return shard >= 0 && target <= lastKeys[shard] ? shard : -1;
+    }
+
+    // Searches the one shard that can hold target; returns the global position or -1
+    public long search(long target) {
+        int shard = shardFor(target);
+        if (shard < 0) {
+            return -1;
+        }
+        long position = shards[shard].binarySearch(target);
+        return position < 0 ? -1 : offsets[shard] + position;
+    }
+
+    // Groups the targets by shard with a counting sort, then resolves every shard's group (in
+    // slices of BATCH_SLICE) in parallel with the sorted batch sweep. Results are in target order.
+    public long[] batchSearch(long[] targets) throws InterruptedException {
+        int[] shardOf = new int[targets.length];
+        int[] starts = new int[shards.length + 2];
+        for (int i = 0; i < targets.length; i++) {
+            int shard = shardFor(targets[i]);
+            shardOf[i] = shard < 0 ? shards.length : shard; // The last group holds the targets no shard can have
+            starts[shardOf[i] + 1]++;
+        }
+        for (int s = 0; s < shards.length + 1; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] order = new int[targets.length];
+        int[] next = Arrays.copyOf(starts, shards.length + 1);
+        for (int i = 0; i < targets.length; i++) {
+            order[next[shardOf[i]]++] = i;
+        }
+
+        long[] results = new long[targets.length];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            int shard = s;
+            for (int from = starts[s]; from < starts[s + 1]; from += BATCH_SLICE) {
+                int start = from;
+                int end = Math.min(from + BATCH_SLICE, starts[s + 1]);
+                tasks.add(() -> {
+                    long[] slice = new long[end - start];
+                    for (int k = start; k < end; k++) {
+                        slice[k - start] = targets[order[k]];
+                    }
+                    long[] positions = shards[shard].batchSearch(slice);
+                    for (int k = start; k < end; k++) {
+                        long position = positions[k - start];
+                        results[order[k]] = position < 0 ? -1 : offsets[shard] + position;
+                    }
+                    return null;
+                });
+            }
+        }
+        for (int k = starts[shards.length]; k < targets.length; k++) {
+            results[order[k]] = -1;
+        }
+        invokeAll(tasks);
+        return results;
+    }
+
+    // Number of elements with low <= value <= high, counted in parallel in every shard the range touches
+    public long count(long low, long high) throws InterruptedException {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int shard : shardsOverlapping(low, high)) {
+            tasks.add(() -> shards[shard].count(low, high));
+        }
+        long count = 0;
+        for (long shardCount : invokeAll(tasks)) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    // Count, sum, min and max of every value in [low, high], each shard streamed in parallel
+    public LongSummaryStatistics rangeStatistics(long low, long high) throws InterruptedException {
+        List<Callable<LongSummaryStatistics>> tasks = new ArrayList<>();
+        for (int shard : shardsOverlapping(low, high)) {
+            tasks.add(() -> shards[shard].range(low, high).summaryStatistics());
+        }
+        LongSummaryStatistics statistics = new LongSummaryStatistics();
+        for (LongSummaryStatistics shardStatistics : invokeAll(tasks)) {
+            statistics.combine(shardStatistics);
+        }
+        return statistics;
+    }
+
+    private int[] shardsOverlapping(long low, long high) {
+        int count = 0;
+        int[] overlapping = new int[shards.length];
+        for (int s = 0; s < shards.length && low <= high; s++) {
+            if (firstKeys[s] <= high && lastKeys[s] >= low) {
+                overlapping[count++] = s;
+            }
+        }
+        return Arrays.copyOf(overlapping, count);
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws InterruptedException {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sharded query failed.", e.getCause());
+        }
+        return results;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public long getNumElements() {
+        return numElements;
+    }
+
+    public SearchEngine getShard(int shard) {
+        return shards[shard];
+    }
+
+    // Bytes mapped across all shards
+    public long getSizeInBytes() {
+        long size = 0;
+        for (SearchEngine shard : shards) {
+            size += shard.getData().getSizeInBytes();
+        }
+        return size;
+    }
+
+    public String describe() {
+        StringBuilder description = new StringBuilder(String.format("Sharded dataset: %d elements in %d shards\n", numElements, shards.length));
+        for (int s = 0; s < shards.length; s++) {
+            description.append(String.format("  %s: keys [%d, %d], %d elements\n", names[s], firstKeys[s], lastKeys[s], shards[s].getNumElements()));
+        }
+        return description.toString();
+    }
+
+    // Unmaps every shard; no query may still be running
+    @Override
+    public void close() {
+        for (SearchEngine shard : shards) {
+            shard.close();
+        }
+    }
+}
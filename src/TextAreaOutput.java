@@ -0,0 +1,45 @@
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+// Thread-safe output for the GUI text area. Text from any thread is collected in a buffer; the
+// first append after a flush schedules one update on the Event Dispatch Thread, and everything
+// appended until that update runs goes out with it. A trace of thousands of probes therefore
+// reaches the text area as a handful of appends, and output keeps the order it was written in.
+public class TextAreaOutput {
+
+    private final JTextArea outputArea;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean flushScheduled;
+
+    public TextAreaOutput(JTextArea outputArea) {
+        this.outputArea = outputArea;
+    }
+
+    public synchronized void append(String text) {
+        pending.append(text);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    // Drops pending output too, so text from a finished task cannot reappear after a clear
+    public void clear() {
+        synchronized (this) {
+            pending.setLength(0);
+        }
+        SwingUtilities.invokeLater(() -> outputArea.setText(""));
+    }
+
+    private void flush() {
+        String text;
+        synchronized (this) {
+            text = pending.toString();
+            pending.setLength(0);
+            flushScheduled = false;
+        }
+        if (!text.isEmpty()) {
+            outputArea.append(text);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.concurrent.CancellationException;
+
+// Writes search steps to the GUI output area. Traced searches run on a background thread and can be
+// slow, so every probe also checks whether that thread has been interrupted by a cancel.
+public class TextAreaTraceListener implements SearchListener {
+
+    private final TextAreaOutput outputArea;
+
+    public TextAreaTraceListener(TextAreaOutput outputArea) {
+        this.outputArea = outputArea;
+    }
+
+    @Override
+    public void probe(long index, long value) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled.");
+        }
+        outputArea.append(String.format("Checking index %d: value = %d\n", index, value));
+    }
+
+    @Override
+    public void estimate(long index, long value) {
+        outputArea.append(String.format("Estimated position %d: value = %d\n", index, value));
+    }
+
+    @Override
+    public void movedLeft(long index, long newLeft) {
+        outputArea.append(String.format("Target greater than value at index %d. New left index: %d\n", index, newLeft));
+    }
+
+    @Override
+    public void movedRight(long index, long newRight) {
+        outputArea.append(String.format("Target less than value at index %d. New right index: %d\n", index, newRight));
+    }
+
+    @Override
+    public void rangeExpanded(long range) {
+        outputArea.append(String.format("Range doubled to %d\n", range));
+    }
+
+    @Override
+    public void rangeNarrowed(long left, long right) {
+        outputArea.append(String.format("Range narrowed to: left = %d, right = %d\n", left, right));
+    }
+
+    @Override
+    public void phase(String description) {
+        outputArea.append(description + "\n");
+    }
+
+    @Override
+    public void found(long index) {
+        outputArea.append("Found target at index " + index + "\n");
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+// Checks LearnedIndex lookups against the keys of the file they were built on. Run with:
+// javac -d out src/*.java test/*.java && java -cp out LearnedIndexTest
+public class LearnedIndexTest {
+
+    public static void main(String[] args) throws IOException {
+        File file = Files.createTempFile("learned-test", ".bin").toFile();
+        try {
+            findsClusteredLargeKeys(file);
+            findsKeysAcrossTheWholeRange(file);
+            rejectsTargetsOutsideTheKeys(file);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+        System.out.println("LearnedIndexTest passed.");
+    }
+
+    // Keys packed near -4.6e18, where neighbouring doubles are 1024 apart
+    private static void findsClusteredLargeKeys(File file) throws IOException {
+        SplittableRandom rand = new SplittableRandom(4);
+        for (int size : new int[] {100, 5_000, 70_000}) {
+            long[] keys = new long[size];
+            long key = -4_600_000_000_000_000_000L;
+            for (int i = 0; i < size; i++) {
+                key += rand.nextInt(8) == 0 ? rand.nextLong(1L << 20) : rand.nextInt(3);
+                keys[i] = key;
+            }
+            write(file, Long.BYTES, true, keys);
+            checkEveryKey(file, keys);
+        }
+    }
+
+    // Differences between keys overflow a signed long here
+    private static void findsKeysAcrossTheWholeRange(File file) throws IOException {
+        SplittableRandom rand = new SplittableRandom(5);
+        long[] keys = new long[20_000];
+        long step = Long.MAX_VALUE / keys.length * 2;
+        for (int i = 0; i < keys.length - 1; i++) {
+            // Wraps from Long.MIN_VALUE through zero towards Long.MAX_VALUE
+            keys[i] = Long.MIN_VALUE + i * step + rand.nextLong(step / 2);
+        }
+        keys[keys.length - 1] = Long.MAX_VALUE;
+        write(file, Long.BYTES, true, keys);
+        checkEveryKey(file, keys);
+    }
+
+    private static void rejectsTargetsOutsideTheKeys(File file) throws IOException {
+        write(file, 1, false, new long[] {34, 35});
+        try (SearchEngine engine = SearchEngine.open(file.getPath())) {
+            LearnedIndex index = LearnedIndex.build(engine);
+            long[] misses = {Long.MIN_VALUE, -1, 0, 33, 36, 255, Long.MAX_VALUE};
+            for (long target : misses) {
+                check(index.search(target) == -1, target + " was found in [34, 35]");
+            }
+            check(index.search(34) == 0 && index.search(35) == 1, "keys of [34, 35] not found");
+        }
+    }
+
+    private static void checkEveryKey(File file, long[] keys) throws IOException {
+        try (SearchEngine engine = SearchEngine.open(file.getPath())) {
+            LearnedIndex index = LearnedIndex.build(engine);
+            for (long key : keys) {
+                long position = index.search(key);
+                check(position >= 0 && engine.readElement(position) == key, "key " + key + " not found");
+            }
+            check(index.search(Long.MIN_VALUE) == (keys[0] == Long.MIN_VALUE ? 0 : -1), "Long.MIN_VALUE misreported");
+            long last = index.search(Long.MAX_VALUE);
+            check(keys[keys.length - 1] == Long.MAX_VALUE ? engine.readElement(last) == Long.MAX_VALUE : last == -1,
+                    "Long.MAX_VALUE misreported");
+        }
+    }
+
+    private static void write(File file, int elementSize, boolean signed, long[] keys) throws IOException {
+        DataFileHeader header = new DataFileHeader(elementSize, signed, ByteOrder.BIG_ENDIAN, keys.length,
+                keys[0], keys[keys.length - 1], new long[0]);
+        ByteBuffer data = ByteBuffer.allocate(keys.length * elementSize);
+        for (long key : keys) {
+            DataFileIO.putElement(data, elementSize, key);
+        }
+        data.flip();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            channel.truncate(0);
+            DataFileIO.writeFully(header.toByteBuffer(), channel);
+            DataFileIO.writeFully(data, channel);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Checks SearchCli's target parsing. Run with:
+// javac -d out src/*.java test/*.java && java -cp out SearchCliTest
+public class SearchCliTest {
+
+    public static void main(String[] args) throws IOException {
+        readsSeparatedTargets();
+        readsLongExtremes();
+        rejectsByteOrderMark();
+        rejectsNonAsciiSeparator();
+        rejectsOverflow();
+        System.out.println("SearchCliTest passed.");
+    }
+
+    private static void readsSeparatedTargets() throws IOException {
+        SearchCli.TargetReader reader = reader("12, -7\t0\r\n42\n");
+        long[] expected = {12, -7, 0, 42};
+        for (long value : expected) {
+            check(reader.next(), "expected another target");
+            check(reader.value() == value, "expected " + value + " but read " + reader.value());
+        }
+        check(!reader.next(), "expected the end of the input");
+    }
+
+    private static void readsLongExtremes() throws IOException {
+        SearchCli.TargetReader reader = reader(Long.MAX_VALUE + " " + Long.MIN_VALUE);
+        check(reader.next() && reader.value() == Long.MAX_VALUE, "Long.MAX_VALUE not read");
+        check(reader.next() && reader.value() == Long.MIN_VALUE, "Long.MIN_VALUE not read");
+    }
+
+    private static void rejectsByteOrderMark() {
+        expectFailure("\uFEFF1\n2\n", "0xEF");
+    }
+
+    private static void rejectsNonAsciiSeparator() {
+        expectFailure("1\u00A02\n", "0xC2");
+    }
+
+    private static void rejectsOverflow() {
+        expectFailure("5 99999999999999999999999\n", "out of range");
+        expectFailure("9223372036854775808\n", "out of range");
+        expectFailure("-9223372036854775809\n", "out of range");
+    }
+
+    private static void expectFailure(String input, String message) {
+        try {
+            SearchCli.TargetReader reader = reader(input);
+            while (reader.next()) {
+                // consume until the invalid target
+            }
+        } catch (IllegalArgumentException e) {
+            check(e.getMessage().contains(message), "unexpected message: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("input was accepted: " + input);
+    }
+
+    private static SearchCli.TargetReader reader(String input) {
+        return new SearchCli.TargetReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Checks ShardedDataset.split against the file it was split from. Run with:
+// javac -d out src/*.java test/*.java && java -cp out ShardedDatasetTest
+public class ShardedDatasetTest {
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("sharded-test");
+        try {
+            File dataFile = new File(root.toFile(), "data.bin");
+            GenerateBinaryData.generateDataFile(dataFile.getPath(), 200_000, ByteOrder.BIG_ENDIAN);
+
+            splitIgnoresOtherDataFiles(root, dataFile);
+            shardsMatchSource(root, dataFile);
+            rejectsSourceDirectory(root, dataFile);
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        System.out.println("ShardedDatasetTest passed.");
+    }
+
+    // Another data file beside the shards must not end up in the manifest
+    private static void splitIgnoresOtherDataFiles(Path root, File dataFile) throws IOException {
+        File directory = new File(root.toFile(), "with-other");
+        directory.mkdirs();
+        Files.copy(dataFile.toPath(), new File(directory, "other.bin").toPath());
+        ShardedDataset.split(dataFile.getPath(), directory.getPath(), 4);
+        try (ShardedDataset dataset = ShardedDataset.open(directory.getPath())) {
+            check(dataset.getShardCount() == 4, "expected 4 shards, found " + dataset.getShardCount());
+        }
+    }
+
+    private static void shardsMatchSource(Path root, File dataFile) throws Exception {
+        File directory = new File(root.toFile(), "shards");
+        ShardedDataset.split(dataFile.getPath(), directory.getPath(), 5);
+        try (SearchEngine source = SearchEngine.open(dataFile.getPath());
+             ShardedDataset dataset = ShardedDataset.open(directory.getPath())) {
+            check(dataset.getNumElements() == source.getNumElements(), "element counts differ");
+            long[] targets = new long[10_000];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = source.readElement((long) i * source.getNumElements() / targets.length) + i % 3 - 1;
+            }
+            long[] positions = dataset.batchSearch(targets);
+            for (int i = 0; i < targets.length; i++) {
+                long position = dataset.search(targets[i]);
+                boolean found = source.binarySearch(targets[i]) >= 0;
+                check((position >= 0) == found, "lookup of " + targets[i] + " disagrees with the source");
+                check((positions[i] >= 0) == found, "batch lookup of " + targets[i] + " disagrees with the source");
+                if (found) {
+                    check(source.readElement(position) == targets[i], "position of " + targets[i] + " is wrong");
+                    check(source.readElement(positions[i]) == targets[i], "batch position of " + targets[i] + " is wrong");
+                }
+            }
+            long low = source.readElement(source.getNumElements() / 7);
+            long high = source.readElement(source.getNumElements() * 5 / 7);
+            check(dataset.count(low, high) == source.count(low, high), "range counts differ");
+        }
+    }
+
+    private static void rejectsSourceDirectory(Path root, File dataFile) throws IOException {
+        try {
+            ShardedDataset.split(dataFile.getPath(), root.toString(), 3);
+        } catch (IllegalArgumentException e) {
+            File[] shards = root.toFile().listFiles((dir, name) -> name.startsWith("shard-"));
+            check(shards != null && shards.length == 0, "shards were written beside the source");
+            return;
+        }
+        throw new AssertionError("splitting into the source's directory was accepted");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
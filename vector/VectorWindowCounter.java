@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API kernel for MappedDataFile.countLessThan: loads a whole register of 4- or 8-byte
+// elements straight from the mapped segment, compares them with the target at once and counts the
+// lanes below it. Elements left over after the last full register are counted one at a time, as a
+// masked load is far slower than that on JDK 17. The segment already has the file's byte order.
+// jdk.incubator.vector is only present when added explicitly, hence its own source root:
+// javac -cp out --add-modules jdk.incubator.vector -d out vector/*.java
+// java --add-modules jdk.incubator.vector -cp out ...
+// MappedDataFile falls back to its scalar loop whenever this class or the module is missing.
+class VectorWindowCounter implements MappedDataFile.WindowCounter {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public boolean supports(int elementSize) {
+        return elementSize == Integer.BYTES || elementSize == Long.BYTES;
+    }
+
+    @Override
+    public int countLessThan(ByteBuffer segment, int offset, int limit, int elementSize, boolean signed,
+                             ByteOrder byteOrder, long target) {
+        return elementSize == Long.BYTES
+                ? countLongs(segment, offset, (limit - offset) / Long.BYTES, byteOrder, target)
+                : countInts(segment, offset, (limit - offset) / Integer.BYTES, signed, byteOrder, target);
+    }
+
+    private static int countInts(ByteBuffer segment, int offset, int length, boolean signed, ByteOrder byteOrder,
+                                 long target) {
+        // A target outside the int range is above or below every element
+        long min = signed ? Integer.MIN_VALUE : 0;
+        long max = signed ? Integer.MAX_VALUE : 0xFFFFFFFFL;
+        if (target <= min) {
+            return 0;
+        }
+        if (target > max) {
+            return length;
+        }
+        VectorOperators.Comparison lessThan = signed ? VectorOperators.LT : VectorOperators.UNSIGNED_LT;
+        int key = (int) target;
+        int count = 0;
+        int i = 0;
+        for (; i <= length - INTS.length(); i += INTS.length()) {
+            IntVector values = IntVector.fromByteBuffer(INTS, segment, offset + i * Integer.BYTES, byteOrder);
+            count += values.compare(lessThan, key).trueCount();
+        }
+        for (; i < length; i++) {
+            int value = segment.getInt(offset + i * Integer.BYTES);
+            count += (signed ? value < key : Integer.compareUnsigned(value, key) < 0) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static int countLongs(ByteBuffer segment, int offset, int length, ByteOrder byteOrder, long target) {
+        int count = 0;
+        int i = 0;
+        for (; i <= length - LONGS.length(); i += LONGS.length()) {
+            LongVector values = LongVector.fromByteBuffer(LONGS, segment, offset + i * Long.BYTES, byteOrder);
+            count += values.compare(VectorOperators.LT, target).trueCount();
+        }
+        for (; i < length; i++) {
+            count += segment.getLong(offset + i * Long.BYTES) < target ? 1 : 0;
+        }
+        return count;
+    }
+}